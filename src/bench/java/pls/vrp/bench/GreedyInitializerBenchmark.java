@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pls.vrp.VrpGreedyInitializer;
+import pls.vrp.VrpSolution;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GreedyInitializerBenchmark {
+  
+  @Benchmark
+  public VrpSolution nearestNeighborHeuristic(ProblemState state) {
+    return new VrpGreedyInitializer(1.0, 1.0, 0.0).nearestNeighborHeuristic(state.problem);
+  }
+  
+  @Benchmark
+  public List<VrpSolution> bestOfRandomStarts(ProblemState state) {
+    return VrpGreedyInitializer.bestOfRandomStarts(state.problem, 32, 4, new Random(ProblemState.SEED), 
+        Runtime.getRuntime().availableProcessors());
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pls.vrp.VrpLnsRunner;
+import pls.vrp.VrpPlsSolution;
+
+/**
+ * Runs one time slice of the full LNS loop from the greedy solution. Every invocation starts
+ * from the same solution and seed, and the attempts counter gives LNS iterations per second.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LnsRunnerBenchmark {
+  private static final int MAX_ITER = 35;
+  private static final int MAX_ESCALATION = 35;
+  private static final int RELAXATION_RANDOMNESS = 15;
+  private static final int MAX_DISCREPANCIES = 5;
+  
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long attempts;
+    public long improvements;
+    public double finalCost;
+    
+    @Setup(Level.Iteration)
+    public void reset() {
+      attempts = 0;
+      improvements = 0;
+    }
+  }
+  
+  @Param({"2000"})
+  public long sliceMillis;
+  
+  @Benchmark
+  public VrpPlsSolution run(ProblemState state, Counters counters) {
+    VrpPlsSolution start = new VrpPlsSolution(state.initSol, MAX_ITER, MAX_ESCALATION, 
+        RELAXATION_RANDOMNESS, MAX_DISCREPANCIES, 0, -1);
+    start.setCurEscalation(1);
+    VrpLnsRunner runner = new VrpLnsRunner();
+    VrpPlsSolution result = runner.run(start, System.currentTimeMillis() + sliceMillis, 
+        new Random(ProblemState.SEED))[0];
+    counters.attempts += runner.getNumTries();
+    counters.improvements += runner.getNumSuccesses();
+    counters.finalCost = result.getCost();
+    return result;
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pls.vrp.VrpGreedyInitializer;
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpReader;
+import pls.vrp.VrpSolution;
+
+/**
+ * Loads one of the bundled problem instances along with a greedy starting solution.
+ * Benchmarks are run from the project root, or with -Dvrp.problems.dir pointing at
+ * the problems directory.
+ */
+@State(Scope.Benchmark)
+public class ProblemState {
+  public static final long SEED = 12345;
+  
+  @Param({"C1_2_3.TXT", "R1_6_1.TXT", "RC1_8_1.TXT", "RC21010.TXT"})
+  public String instance;
+  
+  public File file;
+  public VrpProblem problem;
+  public VrpSolution initSol;
+  
+  @Setup
+  public void setup() throws IOException {
+    file = new File(System.getProperty("vrp.problems.dir", "problems"), instance);
+    problem = VrpReader.readSolomon(file, Integer.MAX_VALUE);
+    initSol = new VrpGreedyInitializer(1.0, 1.0, 0.0).nearestNeighborHeuristic(problem);
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pls.vrp.VrpDistances;
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpReader;
+
+/**
+ * Times building a VrpProblem, both from arrays already in memory with each way of storing
+ * distances, and from the instance file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VrpProblemBenchmark {
+  
+  @Param({"FULL", "TRIANGULAR", "ON_THE_FLY", "CACHED_ROWS"})
+  public String distanceMode;
+  
+  @Benchmark
+  public VrpProblem construct(ProblemState state) {
+    VrpProblem p = state.problem;
+    return new VrpProblem(p.getDemands(), p.getXCoors(), p.getYCoors(), p.getServiceTimes(), 
+        p.getWindowStartTimes(), p.getWindowEndTimes(), p.getDepotX(), p.getDepotY(), p.getVehicleCapacity(),
+        VrpDistances.Mode.valueOf(distanceMode));
+  }
+  
+  @Benchmark
+  public VrpProblem readSolomon(ProblemState state) throws IOException {
+    return VrpReader.readSolomon(state.file, Integer.MAX_VALUE);
+  }
+  
+  @Benchmark
+  public VrpProblem readMapped(ProblemState state) throws IOException {
+    return VrpReader.read(state.file, Integer.MAX_VALUE, true);
+  }
+}
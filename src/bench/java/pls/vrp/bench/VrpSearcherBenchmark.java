@@ -0,0 +1,77 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pls.vrp.LnsRelaxer;
+import pls.vrp.VrpSolution;
+import pls.vrp.hm.VrpCpStats;
+import pls.vrp.hm.VrpSearcher;
+
+/**
+ * Times VrpSearcher.solve over a fixed set of relaxed neighborhoods of the greedy solution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VrpSearcherBenchmark {
+  private static final int NUM_NEIGHBORHOODS = 64;
+  private static final int MAX_DISCREPANCIES = 5;
+  
+  @Param({"5", "15", "35"})
+  public int numToRelax;
+  
+  private VrpSearcher searcher;
+  private VrpSolution[] partialSols;
+  private double bestCost;
+  private int next;
+  
+  @Setup
+  public void setup(ProblemState state) {
+    searcher = new VrpSearcher(state.problem);
+    LnsRelaxer relaxer = new LnsRelaxer(15, state.problem.getMaxDistance(), new Random(ProblemState.SEED));
+    partialSols = new VrpSolution[NUM_NEIGHBORHOODS];
+    for (int i = 0; i < partialSols.length; i++) {
+      partialSols[i] = relaxer.relaxShaw(state.initSol, numToRelax, -1);
+    }
+    bestCost = state.initSol.getToursCost();
+  }
+  
+  @Benchmark
+  public VrpSolution solve() {
+    VrpSolution partialSol = partialSols[next];
+    next = (next + 1) % partialSols.length;
+    return searcher.solve(partialSol, bestCost, MAX_DISCREPANCIES, new VrpCpStats(), true);
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes checkpoints to a file on a background thread, at most once per interval. If a write is
+ * still in progress when the next checkpoint arrives, only the newest one waiting is written.
+ */
+public class Checkpointer {
+  private static final Logger LOG = Logger.getLogger(Checkpointer.class);
+  
+  private final File file;
+  private final long intervalMs;
+  private final ExecutorService writer;
+  private final AtomicReference<LnsCheckpoint> pending = new AtomicReference<LnsCheckpoint>();
+  private long lastSubmitTime;
+  
+  public Checkpointer(File file, long intervalMs) {
+    this.file = file;
+    this.intervalMs = intervalMs;
+    this.lastSubmitTime = System.currentTimeMillis();
+    writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+  
+  public File getFile() {
+    return file;
+  }
+  
+  /**
+   * Cheap enough to call after every iteration.
+   */
+  public boolean isDue(long now) {
+    return now - lastSubmitTime >= intervalMs;
+  }
+  
+  public void submit(LnsCheckpoint checkpoint) {
+    lastSubmitTime = System.currentTimeMillis();
+    if (pending.getAndSet(checkpoint) == null) {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          LnsCheckpoint latest = pending.getAndSet(null);
+          if (latest != null) {
+            try {
+              latest.write(file);
+            } catch (IOException ex) {
+              LOG.error("Failed to write checkpoint to " + file, ex);
+            }
+          }
+        }
+      });
+    }
+  }
+  
+  /**
+   * Waits for checkpoints that have been submitted to be written.
+   */
+  public void close() throws InterruptedException {
+    writer.shutdown();
+    writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+}
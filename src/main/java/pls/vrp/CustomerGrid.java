@@ -0,0 +1,198 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.util.Arrays;
+
+/**
+ * The customers not yet routed by a greedy construction, bucketed into a grid of square cells
+ * by their coordinates, so that the search for the next customer can go outward from the
+ * current one and stop once no cell left could hold a better one. Each cell also keeps the
+ * smallest demand and the latest window end of its customers, so that cells where nobody fits
+ * can be skipped without looking inside.
+ */
+class CustomerGrid {
+  private final VrpProblem problem;
+  private final int numCols;
+  private final int numRows;
+  private final double minX;
+  private final double minY;
+  private final double cellSize;
+  
+  //customers of cell c are custs[cellStarts[c]] to custs[cellStarts[c] + cellCounts[c] - 1]
+  private final int[] cellStarts;
+  private final int[] cellCounts;
+  private final int[] custs;
+  //index of each customer in custs
+  private final int[] positions;
+  private final int[] cellOf;
+  private final int[] minDemands;
+  private final int[] maxWindowEnds;
+  private int size;
+  
+  public CustomerGrid(VrpProblem problem, int custsPerCell) {
+    this.problem = problem;
+    int[] xCoors = problem.getXCoors();
+    int[] yCoors = problem.getYCoors();
+    int numCusts = xCoors.length;
+    
+    //the depot is inside the grid too, so that searches from it can start in its cell
+    int minXCoor = problem.getDepotX();
+    int maxXCoor = minXCoor;
+    int minYCoor = problem.getDepotY();
+    int maxYCoor = minYCoor;
+    for (int i = 0; i < numCusts; i++) {
+      minXCoor = Math.min(minXCoor, xCoors[i]);
+      maxXCoor = Math.max(maxXCoor, xCoors[i]);
+      minYCoor = Math.min(minYCoor, yCoors[i]);
+      maxYCoor = Math.max(maxYCoor, yCoors[i]);
+    }
+    double width = Math.max(1, maxXCoor - minXCoor);
+    double height = Math.max(1, maxYCoor - minYCoor);
+    int numCells = Math.max(1, numCusts / custsPerCell);
+    double side = Math.sqrt(width * height / numCells);
+    //the grid is one cell bigger than the bounding box so that the far edge falls inside it
+    numCols = (int)(width / side) + 1;
+    numRows = (int)(height / side) + 1;
+    minX = minXCoor;
+    minY = minYCoor;
+    cellSize = side;
+    
+    cellOf = new int[numCusts];
+    cellCounts = new int[numCols * numRows];
+    for (int i = 0; i < numCusts; i++) {
+      cellOf[i] = getCell(getCol(xCoors[i]), getRow(yCoors[i]));
+      cellCounts[cellOf[i]]++;
+    }
+    cellStarts = new int[cellCounts.length];
+    for (int c = 1; c < cellStarts.length; c++) {
+      cellStarts[c] = cellStarts[c - 1] + cellCounts[c - 1];
+    }
+    custs = new int[numCusts];
+    positions = new int[numCusts];
+    Arrays.fill(cellCounts, 0);
+    for (int i = 0; i < numCusts; i++) {
+      int pos = cellStarts[cellOf[i]] + cellCounts[cellOf[i]]++;
+      custs[pos] = i;
+      positions[i] = pos;
+    }
+    size = numCusts;
+    minDemands = new int[cellCounts.length];
+    maxWindowEnds = new int[cellCounts.length];
+    for (int c = 0; c < cellCounts.length; c++) {
+      updateCellSummary(c);
+    }
+  }
+  
+  public void remove(int custId) {
+    int cell = cellOf[custId];
+    int pos = positions[custId];
+    int lastPos = cellStarts[cell] + cellCounts[cell] - 1;
+    if (pos > lastPos || custs[pos] != custId) {
+      return;
+    }
+    int lastCustId = custs[lastPos];
+    custs[pos] = lastCustId;
+    positions[lastCustId] = pos;
+    custs[lastPos] = custId;
+    positions[custId] = lastPos;
+    cellCounts[cell]--;
+    size--;
+    if (problem.getDemands()[custId] == minDemands[cell] 
+        || problem.getWindowEndTimes()[custId] == maxWindowEnds[cell]) {
+      updateCellSummary(cell);
+    }
+  }
+  
+  private void updateCellSummary(int cell) {
+    int[] demands = problem.getDemands();
+    int[] windowEndTimes = problem.getWindowEndTimes();
+    int minDemand = Integer.MAX_VALUE;
+    int maxWindowEnd = Integer.MIN_VALUE;
+    int end = cellStarts[cell] + cellCounts[cell];
+    for (int i = cellStarts[cell]; i < end; i++) {
+      minDemand = Math.min(minDemand, demands[custs[i]]);
+      maxWindowEnd = Math.max(maxWindowEnd, windowEndTimes[custs[i]]);
+    }
+    minDemands[cell] = minDemand;
+    maxWindowEnds[cell] = maxWindowEnd;
+  }
+  
+  /**
+   * Number of customers left.
+   */
+  public int size() {
+    return size;
+  }
+  
+  public int getNumCols() {
+    return numCols;
+  }
+  
+  public int getNumRows() {
+    return numRows;
+  }
+  
+  public double getCellSize() {
+    return cellSize;
+  }
+  
+  public int getCol(double x) {
+    return Math.max(0, Math.min(numCols - 1, (int)((x - minX) / cellSize)));
+  }
+  
+  public int getRow(double y) {
+    return Math.max(0, Math.min(numRows - 1, (int)((y - minY) / cellSize)));
+  }
+  
+  public int getCell(int col, int row) {
+    return row * numCols + col;
+  }
+  
+  public int getNumCusts(int cell) {
+    return cellCounts[cell];
+  }
+  
+  /**
+   * @return
+   *     the index'th customer left in the given cell
+   */
+  public int getCust(int cell, int index) {
+    return custs[cellStarts[cell] + index];
+  }
+  
+  public int getMinDemand(int cell) {
+    return minDemands[cell];
+  }
+  
+  public int getMaxWindowEnd(int cell) {
+    return maxWindowEnds[cell];
+  }
+  
+  /**
+   * @return
+   *     the distance from the given point to the nearest point of the given cell
+   */
+  public double getMinDistance(int cell, double x, double y) {
+    double cellMinX = minX + (cell % numCols) * cellSize;
+    double cellMinY = minY + (cell / numCols) * cellSize;
+    double xDiff = Math.max(0, Math.max(cellMinX - x, x - (cellMinX + cellSize)));
+    double yDiff = Math.max(0, Math.max(cellMinY - y, y - (cellMinY + cellSize)));
+    return Math.sqrt(xDiff * xDiff + yDiff * yDiff);
+  }
+}
@@ -14,20 +14,16 @@
  * limitations under the License.
  */
 
-package pls.vrp.hm;
 
-import java.util.List;
-import java.util.Set;
+package pls.vrp;
 
 /**
- * An insertion point and a set of customers removed at it.
+ * Notified of each new best solution found by a run.
  */
-public class RemovedCustomers {
-  public RouteNode insertAfter;
-  public Set<Integer> custIds;
-  
-  public RemovedCustomers(RouteNode insertAfter, Set<Integer> custIds) {
-    this.insertAfter = insertAfter;
-    this.custIds = custIds;
-  }
+public interface IncumbentListener {
+  /**
+   * Called on the publisher's thread, never the search's, so taking a while only means that
+   * intermediate incumbents are skipped.
+   */
+  public void onIncumbent(IncumbentUpdate update);
 }
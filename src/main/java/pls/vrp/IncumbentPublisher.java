@@ -0,0 +1,132 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers new best solutions to listeners on a background thread. Any number of search threads
+ * may publish, and only solutions cheaper than everything published before are delivered. If
+ * listeners are still busy with one incumbent when newer ones arrive, only the newest of those
+ * is delivered next.
+ */
+public class IncumbentPublisher {
+  private static final Logger LOG = Logger.getLogger(IncumbentPublisher.class);
+  
+  private final long startTime;
+  private final List<IncumbentListener> listeners = new CopyOnWriteArrayList<IncumbentListener>();
+  private final ExecutorService deliverer;
+  //cheapest published so far, which a new solution has to beat
+  private final AtomicReference<IncumbentUpdate> best = new AtomicReference<IncumbentUpdate>();
+  //whether a delivery is queued that hasn't looked at best yet
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  //only touched by the delivering thread
+  private IncumbentUpdate lastDelivered;
+  
+  public IncumbentPublisher() {
+    startTime = System.currentTimeMillis();
+    deliverer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "incumbent-publisher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+  
+  public void addListener(IncumbentListener listener) {
+    listeners.add(listener);
+  }
+  
+  public void removeListener(IncumbentListener listener) {
+    listeners.remove(listener);
+  }
+  
+  /**
+   * @return
+   *     the best solution published so far, or null
+   */
+  public IncumbentUpdate getBest() {
+    return best.get();
+  }
+  
+  /**
+   * Returns right away. The solution is delivered later if it's the best published so far.
+   * 
+   * @return
+   *     true if the solution was the best so far
+   */
+  public boolean publish(VrpSolution sol) {
+    IncumbentUpdate update = null;
+    while (true) {
+      IncumbentUpdate cur = best.get();
+      if (cur != null && sol.getToursCost() > cur.getCost() - .001) {
+        return false;
+      }
+      if (update == null) {
+        update = new IncumbentUpdate(sol, System.currentTimeMillis() - startTime);
+      }
+      if (best.compareAndSet(cur, update)) {
+        break;
+      }
+    }
+    if (scheduled.compareAndSet(false, true)) {
+      deliverer.execute(new Runnable() {
+        @Override
+        public void run() {
+          deliver();
+        }
+      });
+    }
+    return true;
+  }
+  
+  private void deliver() {
+    scheduled.set(false);
+    IncumbentUpdate update = best.get();
+    if (update == lastDelivered) {
+      return;
+    }
+    lastDelivered = update;
+    for (IncumbentListener listener : listeners) {
+      try {
+        listener.onIncumbent(update);
+      } catch (RuntimeException ex) {
+        LOG.error("Incumbent listener failed", ex);
+      }
+    }
+  }
+  
+  /**
+   * Delivers whatever is pending and stops the background thread.
+   */
+  public void close() throws InterruptedException {
+    deliverer.shutdown();
+    deliverer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+}
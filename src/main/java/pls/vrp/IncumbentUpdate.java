@@ -0,0 +1,55 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+public class IncumbentUpdate {
+  private final VrpSolution sol;
+  private final double cost;
+  private final int numVehicles;
+  private final long elapsedMillis;
+  
+  public IncumbentUpdate(VrpSolution sol, long elapsedMillis) {
+    this.sol = sol;
+    this.cost = sol.getToursCost();
+    this.numVehicles = sol.getNumVehicles();
+    this.elapsedMillis = elapsedMillis;
+  }
+  
+  public VrpSolution getSolution() {
+    return sol;
+  }
+  
+  public double getCost() {
+    return cost;
+  }
+  
+  public int getNumVehicles() {
+    return numVehicles;
+  }
+  
+  /**
+   * Time from the publisher's creation until the solution was found.
+   */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+  
+  public String toString() {
+    return "cost " + cost + ", vehicles " + numVehicles + " after " + elapsedMillis + " ms";
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Everything needed to continue an LNS run: the incumbent, where it was in the escalation, its
+ * parameters, the state of its random number generator and how much time it had left. Snapshots
+ * are immutable, so they can be written out on another thread.
+ * 
+ * The file format is big-endian: magic "LNSC", version, the fields, the tour and route starts of
+ * the incumbent, the serialized Random, and a CRC32 of everything before it.
+ */
+public class LnsCheckpoint {
+  public static final int MAGIC = 0x4c4e5343; //"LNSC"
+  public static final int VERSION = 1;
+  
+  private final VrpSolution sol;
+  private final int curEscalation;
+  private final int curIteration;
+  private final int maxIter;
+  private final int maxEscalation;
+  private final int relaxationRandomness;
+  private final int maxDiscrepancies;
+  private final int solId;
+  private final int parentSolId;
+  private final byte[] randState;
+  private final long timeLeft;
+  
+  private LnsCheckpoint(VrpSolution sol, int curEscalation, int curIteration, int maxIter, int maxEscalation,
+      int relaxationRandomness, int maxDiscrepancies, int solId, int parentSolId, byte[] randState, long timeLeft) {
+    this.sol = sol;
+    this.curEscalation = curEscalation;
+    this.curIteration = curIteration;
+    this.maxIter = maxIter;
+    this.maxEscalation = maxEscalation;
+    this.relaxationRandomness = relaxationRandomness;
+    this.maxDiscrepancies = maxDiscrepancies;
+    this.solId = solId;
+    this.parentSolId = parentSolId;
+    this.randState = randState;
+    this.timeLeft = timeLeft;
+  }
+  
+  /**
+   * @param curEscalation
+   *     the escalation the run should continue at
+   * @param curIteration
+   *     the iteration the run should continue at
+   * @param rand
+   *     the run's random number generator, whose state is copied
+   */
+  public static LnsCheckpoint capture(VrpPlsSolution solAndStuff, int curEscalation, int curIteration, 
+      Random rand, long timeLeft) {
+    return new LnsCheckpoint(solAndStuff.getSolution(), curEscalation, curIteration, 
+        solAndStuff.getMaxIterations(), solAndStuff.getMaxEscalation(), solAndStuff.getRelaxationRandomness(),
+        solAndStuff.getMaxDiscrepancies(), solAndStuff.getSolutionId(), solAndStuff.getParentSolutionId(),
+        serialize(rand), timeLeft);
+  }
+  
+  private static byte[] serialize(Random rand) {
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+      oos.writeObject(rand);
+      oos.close();
+      return bos.toByteArray();
+    } catch (IOException ex) {
+      //a Random that can't be serialized isn't the caller's fault at checkpoint time
+      throw new IllegalStateException("Couldn't serialize random number generator", ex);
+    }
+  }
+  
+  /**
+   * @return
+   *     a fresh VrpPlsSolution positioned where the checkpointed run was
+   */
+  public VrpPlsSolution toPlsSolution() {
+    VrpPlsSolution solAndStuff = new VrpPlsSolution(sol, maxIter, maxEscalation, relaxationRandomness, 
+        maxDiscrepancies, solId, parentSolId);
+    solAndStuff.setCurEscalation(curEscalation);
+    solAndStuff.setCurIteration(curIteration);
+    return solAndStuff;
+  }
+  
+  /**
+   * @return
+   *     a random number generator in the state the run's was in
+   */
+  public Random getRandom() throws IOException {
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(randState));
+    try {
+      return (Random)ois.readObject();
+    } catch (ClassNotFoundException ex) {
+      throw new IOException("Checkpoint has an unknown random number generator: " + ex.getMessage());
+    } finally {
+      ois.close();
+    }
+  }
+  
+  public VrpSolution getSolution() {
+    return sol;
+  }
+  
+  public long getTimeLeft() {
+    return timeLeft;
+  }
+  
+  /**
+   * Writes to a temporary file next to the given one and then renames it, so that a crash
+   * mid-write leaves the previous checkpoint intact.
+   */
+  public void write(File f) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + 4 * sol.getTour().length);
+    DataOutputStream out = new DataOutputStream(bos);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(sol.getProblem().getNumCities());
+    out.writeInt(curEscalation);
+    out.writeInt(curIteration);
+    out.writeInt(maxIter);
+    out.writeInt(maxEscalation);
+    out.writeInt(relaxationRandomness);
+    out.writeInt(maxDiscrepancies);
+    out.writeInt(solId);
+    out.writeInt(parentSolId);
+    out.writeLong(timeLeft);
+    writeInts(out, sol.getTour());
+    writeInts(out, sol.getRouteStarts());
+    out.writeInt(randState.length);
+    out.write(randState);
+    CRC32 crc = new CRC32();
+    crc.update(bos.toByteArray());
+    out.writeInt((int)crc.getValue());
+    out.close();
+    
+    File tmp = new File(f.getPath() + ".tmp");
+    FileOutputStream fos = new FileOutputStream(tmp);
+    try {
+      bos.writeTo(fos);
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+    if (!tmp.renameTo(f)) {
+      //some platforms won't rename over an existing file
+      f.delete();
+      if (!tmp.renameTo(f)) {
+        throw new IOException("Couldn't rename " + tmp + " to " + f);
+      }
+    }
+  }
+  
+  public static LnsCheckpoint read(File f, VrpProblem problem) throws IOException {
+    byte[] bytes = new byte[(int)f.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(f));
+    try {
+      in.readFully(bytes);
+    } finally {
+      in.close();
+    }
+    if (bytes.length < 8) {
+      throw new IOException(f + " is too short to be a checkpoint");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 4);
+    
+    in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != MAGIC) {
+      throw new IOException(f + " is not a checkpoint");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+    int numCities = in.readInt();
+    if (numCities != problem.getNumCities()) {
+      throw new IOException("Checkpoint is for " + numCities + " customers, not " + problem.getNumCities());
+    }
+    int curEscalation = in.readInt();
+    int curIteration = in.readInt();
+    int maxIter = in.readInt();
+    int maxEscalation = in.readInt();
+    int relaxationRandomness = in.readInt();
+    int maxDiscrepancies = in.readInt();
+    int solId = in.readInt();
+    int parentSolId = in.readInt();
+    long timeLeft = in.readLong();
+    int[] tour = readInts(in);
+    int[] routeStarts = readInts(in);
+    byte[] randState = new byte[in.readInt()];
+    in.readFully(randState);
+    if (in.readInt() != (int)crc.getValue()) {
+      throw new IOException(f + " is corrupt");
+    }
+    
+    VrpSolution sol = new VrpSolution(tour, routeStarts, null, problem, -1);
+    return new LnsCheckpoint(sol, curEscalation, curIteration, maxIter, maxEscalation, relaxationRandomness,
+        maxDiscrepancies, solId, parentSolId, randState, timeLeft);
+  }
+  
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+  
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+}
@@ -17,17 +17,34 @@
 package pls.vrp;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Random;
 
+/**
+ * Shaw relaxation: removes a random customer, then repeatedly removes a customer related to one of
+ * those already removed, picked by a randomized rank in relatedness.
+ * 
+ * All bookkeeping is in scratch arrays owned by the relaxer and reused across calls, so a relaxer
+ * must not be used from more than one thread at once.
+ */
 public class LnsRelaxer {
   
   private int randomnessMeasure;
   private double maxDist; //used for normalizing distances for relatedness measure
   private final Random rand;
+  //if positive, only look this far down a customer's neighbor list for related customers
+  private int numNeighbors;
+  
+  //route of each customer in the solution being relaxed
+  private int[] cityVehicles;
+  //scratch space, sized to the number of customers
+  //customers not yet removed, in no particular order, and each one's index in it or -1
+  private int[] remaining;
+  private int[] remainingPositions;
+  private int numRemaining;
+  //candidates for the next removal and their relatedness to the chosen removed customer
+  private int[] candidates;
+  private double[] candidateRelatedness;
   
   public LnsRelaxer(int randomnessMeasure, double maxDist, Random rand) {
     this.randomnessMeasure = randomnessMeasure;
@@ -35,89 +52,168 @@ public class LnsRelaxer {
     this.rand = rand;
   }
   
+  /**
+   * Restricts the search for related customers to each customer's nearest neighbors, falling
+   * back to all remaining customers when the neighbors can't prove which customer has the wanted
+   * rank, so the choice is the same as without neighbors. 0 turns this off.
+   */
+  public void setNumNeighbors(int numNeighbors) {
+    this.numNeighbors = numNeighbors;
+  }
+  
   /**
    * The input solution is not modified.
    */
   public VrpSolution relaxShaw(VrpSolution sol, int numToRelax, int firstToRemove) {
     VrpProblem problem = sol.getProblem();
-    ArrayList<Integer> removedCities = new ArrayList<Integer>(numToRelax);
-    HashSet<Integer> remainingCities = new HashSet<Integer>();
-    
-    int[] cityVehicles = new int[problem.getNumCities()];
-    int vehicle = 0;
-    for (List<Integer> route : sol.getRoutes()) {
-      for (int cityId : route) {
-        cityVehicles[cityId] = vehicle;
-      }
-      vehicle++;
-    }
+    int numCities = problem.getNumCities();
+    ensureCapacity(numCities);
+    //the first customer is always removed
+    numToRelax = Math.max(1, Math.min(numToRelax, numCities));
+    int[] removedCities = new int[numToRelax];
+    int numRemoved = 0;
+    cityVehicles = sol.getCustomerRoutes();
     
     //choose first to remove
     if (firstToRemove == -1) {
-      firstToRemove = (int)(rand.nextDouble() * problem.getNumCities());
+      firstToRemove = (int)(rand.nextDouble() * numCities);
     }
-    for (int i = 0; i < problem.getNumCities(); i++) {
+    numRemaining = 0;
+    for (int i = 0; i < numCities; i++) {
       if (i == firstToRemove) {
-        removedCities.add(i);
+        removedCities[numRemoved++] = i;
+        remainingPositions[i] = -1;
       } else {
-        remainingCities.add(i);
+        remainingPositions[i] = numRemaining;
+        remaining[numRemaining++] = i;
       }
     }
     //remove the rest
     for (int i = 1; i < numToRelax; i++) {
       //take a random removed node
-      int removedCityId = removedCities.get((int)(rand.nextDouble() * removedCities.size()));
+      int removedCityId = removedCities[(int)(rand.nextDouble() * numRemoved)];
       int rank = (randomnessMeasure == Integer.MAX_VALUE) ? 0 :
-          (int)(Math.pow(rand.nextDouble(), randomnessMeasure) * remainingCities.size());
-      int cityId = chooseByRankAndRelatedness(remainingCities, sol, rank, removedCityId, cityVehicles);
-      remainingCities.remove(cityId);
-      removedCities.add(cityId);
+          (int)(Math.pow(rand.nextDouble(), randomnessMeasure) * numRemaining);
+      int cityId = chooseByRankAndRelatedness(problem, rank, removedCityId);
+      removeRemaining(cityId);
+      removedCities[numRemoved++] = cityId;
     }
     //build the new solution
-    List<List<Integer>> newRoutes = buildRoutesWithoutCusts(sol.getRoutes(), removedCities);
-        
-    return new VrpSolution(newRoutes, removedCities, problem);
+    return sol.removeCustomers(removedCities);
   }
   
-  public List<List<Integer>> buildRoutesWithoutCusts(List<List<Integer>> routes, List<Integer> toRemove) {
-    HashSet<Integer> removedCitiesSet = new HashSet<Integer>(toRemove);
-    List<List<Integer>> newRoutes = new ArrayList<List<Integer>>(routes.size());
-    for (List<Integer> oldRoute : routes) {
-      List<Integer> newRoute = new ArrayList<Integer>();
-      newRoutes.add(newRoute);
-      for (Integer cityId : oldRoute) {
-        if (!removedCitiesSet.contains(cityId)) {
-          newRoute.add(cityId);
-        }
-      }
+  private void ensureCapacity(int numCities) {
+    if (remaining == null || remaining.length != numCities) {
+      remaining = new int[numCities];
+      remainingPositions = new int[numCities];
+      candidates = new int[numCities];
+      candidateRelatedness = new double[numCities];
     }
-    
-    return newRoutes;
+  }
+  
+  private void removeRemaining(int cityId) {
+    int pos = remainingPositions[cityId];
+    int last = remaining[--numRemaining];
+    remaining[pos] = last;
+    remainingPositions[last] = pos;
+    remainingPositions[cityId] = -1;
   }
   
   /**
+   * Finds the customer at the given rank when the remaining customers are ordered from most to
+   * least related, with ties going to the lower id.
+   * 
    * @param cityId
    *     the id of the city that we're determining relatedness in relation to
    */
-  private int chooseByRankAndRelatedness(HashSet<Integer> remaining, VrpSolution sol, int rank, int cityId, int[] cityVehicles) {
-    //the head is the least element, i.e. the one whose compareTo(any other element) is less than 0
-    //we want the head of the queue to be the least related customer
-    //thus, we want compareTo to return negative if the argument is more related than us
-    PriorityQueue<CityRelatedness> heap = new PriorityQueue<CityRelatedness>(rank+1);
-    for (int remainingCityId : remaining) {
-      double relatedness = relatedness(cityId, remainingCityId, sol, cityVehicles);
-      if (heap.size() < rank + 1 || relatedness > heap.peek().relatedness) {
-        if (heap.size() == rank + 1) {
-          heap.remove();
+  private int chooseByRankAndRelatedness(VrpProblem problem, int rank, int cityId) {
+    if (numNeighbors > 0) {
+      int[] neighbors = problem.getNeighbors(cityId);
+      int numToScan = Math.min(numNeighbors, neighbors.length);
+      int numCandidates = 0;
+      for (int i = 0; i < numToScan; i++) {
+        int neighborId = neighbors[i];
+        if (remainingPositions[neighborId] >= 0) {
+          candidates[numCandidates] = neighborId;
+          candidateRelatedness[numCandidates] = relatedness(cityId, neighborId, problem);
+          numCandidates++;
+        }
+      }
+      if (numCandidates > rank) {
+        int chosenId = select(numCandidates, rank);
+        //a customer on another route closer than the last scanned neighbor is more related than
+        //every customer off the list, so its rank among the neighbors is its global rank
+        if (numToScan == problem.getNumCities() - 1 || (cityVehicles[chosenId] != cityVehicles[cityId]
+            && problem.getDistance(cityId, chosenId) < problem.getDistance(cityId, neighbors[numToScan - 1]))) {
+          return chosenId;
+        }
+      }
+    }
+    for (int i = 0; i < numRemaining; i++) {
+      int remainingCityId = remaining[i];
+      candidates[i] = remainingCityId;
+      candidateRelatedness[i] = relatedness(cityId, remainingCityId, problem);
+    }
+    return select(numRemaining, rank);
+  }
+  
+  /**
+   * Quickselect over the first numCandidates candidates.
+   */
+  private int select(int numCandidates, int rank) {
+    int lo = 0;
+    int hi = numCandidates - 1;
+    while (lo < hi) {
+      //median of three keeps sorted and reverse sorted input linear
+      int mid = (lo + hi) >>> 1;
+      if (before(mid, lo)) {
+        swap(mid, lo);
+      }
+      if (before(hi, lo)) {
+        swap(hi, lo);
+      }
+      if (before(hi, mid)) {
+        swap(hi, mid);
+      }
+      swap(mid, hi);
+      int store = lo;
+      for (int i = lo; i < hi; i++) {
+        if (before(i, hi)) {
+          swap(i, store++);
         }
-        heap.add(new CityRelatedness(remainingCityId, relatedness));
+      }
+      swap(store, hi);
+      if (store == rank) {
+        break;
+      } else if (store < rank) {
+        lo = store + 1;
+      } else {
+        hi = store - 1;
       }
     }
-    return heap.peek().cityId;
+    return candidates[rank];
   }
   
-  private double relatedness(int nodeId1, int nodeId2, VrpSolution sol, int[] cityVehicles) {
-    double dist = sol.getProblem().getDistances()[nodeId1][nodeId2];
+  /**
+   * Whether candidate i is more related than candidate j.
+   */
+  private boolean before(int i, int j) {
+    double relI = candidateRelatedness[i];
+    double relJ = candidateRelatedness[j];
+    return relI > relJ || (relI == relJ && candidates[i] < candidates[j]);
+  }
+  
+  private void swap(int i, int j) {
+    int cityId = candidates[i];
+    candidates[i] = candidates[j];
+    candidates[j] = cityId;
+    double relatedness = candidateRelatedness[i];
+    candidateRelatedness[i] = candidateRelatedness[j];
+    candidateRelatedness[j] = relatedness;
+  }
+  
+  private double relatedness(int nodeId1, int nodeId2, VrpProblem problem) {
+    double dist = problem.getDistance(nodeId1, nodeId2);
     double denom = dist / maxDist;
     if (cityVehicles[nodeId1] == cityVehicles[nodeId2]) {
       denom += 1.0;
@@ -126,11 +222,9 @@ public class LnsRelaxer {
   }
   
   public List<Integer> findDifferingNodes(VrpSolution sol1, VrpSolution sol2, List<Integer> neighborhood) {
-    int[] preds1 = getPredecessors(sol1);
-    int[] preds2 = getPredecessors(sol2);
     List<Integer> differing = new ArrayList<Integer>(neighborhood.size());
-    for (int i = 0; i < preds1.length; i++) {
-      if (preds1[i] != preds2[i]) {
+    for (int i = 0; i < sol1.getProblem().getNumCities(); i++) {
+      if (sol1.getPredecessor(i) != sol2.getPredecessor(i)) {
         differing.add(i);
       }
     }
@@ -138,61 +232,13 @@ public class LnsRelaxer {
   }
   
   public List<Integer> findDifferingNodes2(VrpSolution sol1, VrpSolution sol2, List<Integer> neighborhood) {
-    int[] preds1 = getPredecessors(sol1);
-    int[] succs1 = getSuccessors(sol1);
-    int[] preds2 = getPredecessors(sol2);
-    int[] succs2 = getSuccessors(sol2);
     List<Integer> differing = new ArrayList<Integer>(neighborhood.size());
     for (int cust : neighborhood) {
-      if (preds1[cust] != preds2[cust] || succs1[cust] != succs2[cust]) {
+      if (sol1.getPredecessor(cust) != sol2.getPredecessor(cust) 
+          || sol1.getSuccessor(cust) != sol2.getSuccessor(cust)) {
         differing.add(cust);
       }
     }
     return differing;
   }
-  
-  private int[] getSuccessors(VrpSolution sol) {
-    int[] succs = new int[sol.getProblem().getNumCities()];
-    for (List<Integer> route : sol.getRoutes()) {
-      Iterator<Integer> iter = route.iterator();
-      int prev = iter.next();
-      while (iter.hasNext()) {
-        int cur = iter.next();
-        succs[prev] = cur;
-        prev = cur;
-      }
-      succs[prev] = -1;
-    }
-    return succs;
-  }
-  
-  private int[] getPredecessors(VrpSolution sol) {
-    int[] preds = new int[sol.getProblem().getNumCities()];
-    for (List<Integer> route : sol.getRoutes()) {
-      Iterator<Integer> iter = route.iterator();
-      int prev = iter.next();
-      preds[prev] = -1;
-      while (iter.hasNext()) {
-        int cur = iter.next();
-        preds[cur] = prev;
-        prev = cur;
-      }
-    }
-    return preds;
-  }
-  
-  private class CityRelatedness implements Comparable<CityRelatedness> {
-    public int cityId;
-    public double relatedness;
-
-    public CityRelatedness(int cityId, double relatedness) {
-      this.cityId = cityId;
-      this.relatedness = relatedness;
-    }
-    
-    @Override
-    public int compareTo(CityRelatedness other) {
-      return (int)Math.signum(this.relatedness - other.relatedness);
-    }
-  }
 }
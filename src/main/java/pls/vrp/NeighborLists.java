@@ -0,0 +1,203 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+/**
+ * Builds lists of each customer's nearest customers, sorted from nearest to farthest with ties
+ * broken by id. Customers are bucketed into a uniform grid, and the cells around each customer are
+ * searched in growing square rings until no unsearched cell can be closer than the k-th nearest
+ * found so far.
+ */
+public class NeighborLists {
+  
+  //customers per grid cell, on average
+  private static final int CUSTS_PER_CELL = 2;
+  
+  private final int[] xCoors;
+  private final int[] yCoors;
+  private final int minX;
+  private final int minY;
+  private final int cellSize;
+  private final int numCellsX;
+  private final int numCellsY;
+  //customers in each cell, in the style of compressed sparse rows
+  private final int[] cellStarts;
+  private final int[] cellCusts;
+  
+  //bounded max-heap on (squared distance, id) of the nearest customers found so far
+  private int[] heapIds;
+  private long[] heapDists;
+  private int heapSize;
+  
+  private NeighborLists(int[] xCoors, int[] yCoors) {
+    this.xCoors = xCoors;
+    this.yCoors = yCoors;
+    int n = xCoors.length;
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < n; i++) {
+      minX = Math.min(minX, xCoors[i]);
+      minY = Math.min(minY, yCoors[i]);
+      maxX = Math.max(maxX, xCoors[i]);
+      maxY = Math.max(maxY, yCoors[i]);
+    }
+    this.minX = minX;
+    this.minY = minY;
+    long area = Math.max(1L, (long)(maxX - minX + 1) * (maxY - minY + 1));
+    int numCells = Math.max(1, n / CUSTS_PER_CELL);
+    this.cellSize = Math.max(1, (int)Math.ceil(Math.sqrt((double)area / numCells)));
+    this.numCellsX = (maxX - minX) / cellSize + 1;
+    this.numCellsY = (maxY - minY) / cellSize + 1;
+    
+    cellStarts = new int[numCellsX * numCellsY + 1];
+    for (int i = 0; i < n; i++) {
+      cellStarts[cellOf(i) + 1]++;
+    }
+    for (int c = 0; c < numCellsX * numCellsY; c++) {
+      cellStarts[c + 1] += cellStarts[c];
+    }
+    cellCusts = new int[n];
+    int[] fill = new int[numCellsX * numCellsY];
+    for (int i = 0; i < n; i++) {
+      int cell = cellOf(i);
+      cellCusts[cellStarts[cell] + fill[cell]++] = i;
+    }
+  }
+  
+  /**
+   * @param k
+   *     number of neighbors per customer, capped at one less than the number of customers
+   * @return
+   *     by customer id, the ids of its k nearest customers, nearest first
+   */
+  public static int[][] build(int[] xCoors, int[] yCoors, int k) {
+    int n = xCoors.length;
+    k = Math.max(0, Math.min(k, n - 1));
+    NeighborLists builder = new NeighborLists(xCoors, yCoors);
+    builder.heapIds = new int[k];
+    builder.heapDists = new long[k];
+    int[][] neighbors = new int[n][];
+    for (int i = 0; i < n; i++) {
+      neighbors[i] = builder.findNearest(i, k);
+    }
+    return neighbors;
+  }
+  
+  private int[] findNearest(int custId, int k) {
+    heapSize = 0;
+    int cellX = (xCoors[custId] - minX) / cellSize;
+    int cellY = (yCoors[custId] - minY) / cellSize;
+    int maxRing = Math.max(Math.max(cellX, numCellsX - 1 - cellX), Math.max(cellY, numCellsY - 1 - cellY));
+    for (int ring = 0; ring <= maxRing && k > 0; ring++) {
+      //cells outside the rings already searched are at least ring-1 cell widths away
+      long minDistOutside = (long)(ring - 1) * cellSize;
+      if (ring > 0 && heapSize == k && heapDists[0] < minDistOutside * minDistOutside) {
+        break;
+      }
+      for (int y = cellY - ring; y <= cellY + ring; y++) {
+        if (y < 0 || y >= numCellsY) {
+          continue;
+        }
+        boolean edgeRow = (y == cellY - ring || y == cellY + ring);
+        int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+        for (int x = cellX - ring; x <= cellX + ring; x += step) {
+          if (x >= 0 && x < numCellsX) {
+            scanCell(y * numCellsX + x, custId, k);
+          }
+        }
+      }
+    }
+    
+    //pop the heap to get the neighbors from farthest to nearest
+    int[] nearest = new int[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      nearest[i] = heapIds[0];
+      heapSize--;
+      heapIds[0] = heapIds[heapSize];
+      heapDists[0] = heapDists[heapSize];
+      siftDown(0);
+    }
+    return nearest;
+  }
+  
+  private void scanCell(int cell, int custId, int k) {
+    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+      int other = cellCusts[i];
+      if (other == custId) {
+        continue;
+      }
+      long xDiff = xCoors[custId] - xCoors[other];
+      long yDiff = yCoors[custId] - yCoors[other];
+      long dist = xDiff * xDiff + yDiff * yDiff;
+      if (heapSize < k) {
+        heapIds[heapSize] = other;
+        heapDists[heapSize] = dist;
+        siftUp(heapSize++);
+      } else if (farther(heapDists[0], heapIds[0], dist, other)) {
+        heapIds[0] = other;
+        heapDists[0] = dist;
+        siftDown(0);
+      }
+    }
+  }
+  
+  private static boolean farther(long dist1, int id1, long dist2, int id2) {
+    return dist1 > dist2 || (dist1 == dist2 && id1 > id2);
+  }
+  
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (!farther(heapDists[pos], heapIds[pos], heapDists[parent], heapIds[parent])) {
+        break;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+  
+  private void siftDown(int pos) {
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && farther(heapDists[child + 1], heapIds[child + 1], heapDists[child], heapIds[child])) {
+        child++;
+      }
+      if (!farther(heapDists[child], heapIds[child], heapDists[pos], heapIds[pos])) {
+        break;
+      }
+      swap(pos, child);
+      pos = child;
+    }
+  }
+  
+  private void swap(int i, int j) {
+    int id = heapIds[i];
+    long dist = heapDists[i];
+    heapIds[i] = heapIds[j];
+    heapDists[i] = heapDists[j];
+    heapIds[j] = id;
+    heapDists[j] = dist;
+  }
+  
+  private int cellOf(int custId) {
+    return ((yCoors[custId] - minY) / cellSize) * numCellsX + (xCoors[custId] - minX) / cellSize;
+  }
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import pls.vrp.hm.CustOrdering;
+import pls.vrp.hm.VrpCpStats;
+import pls.vrp.hm.SearchLimits;
+import pls.vrp.hm.VrpSearcher;
+import pls.vrp.metrics.SearchMetrics;
+
+/**
+ * Runs the same LNS loop as VrpLnsRunner on several threads at once. Each worker has its own
+ * LnsRelaxer and VrpSearcher and its own escalation state, and relaxes whatever the current best
+ * solution is. Improvements are published through a shared reference that is only replaced
+ * with compare-and-set when the new solution is cheaper.
+ */
+public class ParallelVrpLnsRunner {
+
+  private static final Logger LOG = Logger.getLogger(ParallelVrpLnsRunner.class);
+
+  private final int numThreads;
+  private int numNeighbors;
+  private SearchMetrics metrics;
+  private IncumbentPublisher publisher;
+  private long nodeBudget = SearchLimits.NO_NODE_BUDGET;
+  private CustOrdering.Type orderingType = CustOrdering.Type.MAX_MIN_COST;
+  private int regretK = 2;
+  private volatile SearchLimits limits;
+  //set by cancel until the run ends, so that a cancel before run creates its limits still counts
+  private volatile boolean cancelled;
+
+  private final AtomicInteger numTries = new AtomicInteger();
+  private final AtomicInteger numSuccesses = new AtomicInteger();
+
+  public ParallelVrpLnsRunner() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public ParallelVrpLnsRunner(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * The escalation state of the returned solution is that of the worker that found it.
+   */
+  public VrpPlsSolution[] run(VrpPlsSolution solAndStuff, long timeToFinish, Random rand) {
+    long startTime = System.currentTimeMillis();
+    numTries.set(0);
+    numSuccesses.set(0);
+
+    AtomicReference<Incumbent> best = new AtomicReference<Incumbent>(new Incumbent(
+        solAndStuff.getSolution(), solAndStuff.getCurEscalation(), solAndStuff.getCurIteration()));
+    if (publisher != null) {
+      publisher.publish(solAndStuff.getSolution());
+    }
+
+    SearchLimits runLimits = new SearchLimits(timeToFinish, nodeBudget);
+    limits = runLimits;
+    if (cancelled) {
+      runLimits.cancel();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<?>> futures = new ArrayList<Future<?>>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      futures.add(executor.submit(new Worker(solAndStuff, best, runLimits, new Random(rand.nextLong()))));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      throw new RuntimeException("LNS worker failed", ex.getCause());
+    } finally {
+      executor.shutdownNow();
+      limits = null;
+      cancelled = false;
+    }
+
+    Incumbent incumbent = best.get();
+    solAndStuff.setSolution(incumbent.sol);
+    solAndStuff.setCurEscalation(incumbent.escalation);
+    solAndStuff.setCurIteration(incumbent.iteration);
+
+    long endTime = System.currentTimeMillis();
+    LOG.info("ParallelVrpLnsRunner took " + (endTime - startTime) + " ms with " + numThreads + " threads, "
+        + numTries.get() + " tries, " + numSuccesses.get() + " successes");
+
+    return new VrpPlsSolution[] {solAndStuff};
+  }
+
+  /**
+   * Number of relax-and-reinsert attempts made across all workers during the last call to run.
+   */
+  public int getNumTries() {
+    return numTries.get();
+  }
+
+  /**
+   * Number of attempts during the last call to run that improved on the shared best solution.
+   */
+  public int getNumSuccesses() {
+    return numSuccesses.get();
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+  
+  /**
+   * Restricts relaxation and reinsertion to each customer's numNeighbors nearest customers.
+   * 0, the default, considers all of them.
+   */
+  public void setNumNeighbors(int numNeighbors) {
+    this.numNeighbors = numNeighbors;
+  }
+
+  /**
+   * Records timings and outcomes of every worker's relaxations and solves into the given metrics.
+   */
+  public void setMetrics(SearchMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Caps the nodes evaluated by each reinsertion search.
+   */
+  public void setNodeBudget(long nodeBudget) {
+    this.nodeBudget = nodeBudget;
+  }
+
+  /**
+   * Chooses the order reinsertion searches insert customers in. See {@link CustOrdering.Type}.
+   */
+  public void setOrdering(CustOrdering.Type orderingType, int regretK) {
+    this.orderingType = orderingType;
+    this.regretK = regretK;
+  }
+
+  /**
+   * Makes every worker of the run in progress stop soon, even from the middle of a search. A
+   * cancel before the run has started applies to the next run. Safe to call from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+    SearchLimits runLimits = limits;
+    if (runLimits != null) {
+      runLimits.cancel();
+    }
+  }
+
+  /**
+   * Publishes the starting solution and every improvement on the shared best.
+   */
+  public void setPublisher(IncumbentPublisher publisher) {
+    this.publisher = publisher;
+  }
+
+  /**
+   * Replaces the shared best if the given solution is cheaper than it.
+   *
+   * @return
+   *     true if the solution was published
+   */
+  private static boolean publish(AtomicReference<Incumbent> best, Incumbent candidate) {
+    while (true) {
+      Incumbent cur = best.get();
+      if (candidate.cost > cur.cost - .001) {
+        return false;
+      }
+      if (best.compareAndSet(cur, candidate)) {
+        return true;
+      }
+    }
+  }
+
+  private static class Incumbent {
+    public final VrpSolution sol;
+    public final double cost;
+    public final int escalation;
+    public final int iteration;
+
+    public Incumbent(VrpSolution sol, int escalation, int iteration) {
+      this.sol = sol;
+      this.cost = sol.getToursCost();
+      this.escalation = escalation;
+      this.iteration = iteration;
+    }
+  }
+
+  private class Worker implements Callable<Void> {
+    private final AtomicReference<Incumbent> best;
+    private final SearchLimits limits;
+    private final LnsRelaxer relaxer;
+    private final VrpSearcher solver;
+    private final int maxIter;
+    private final int maxEscalation;
+    private final int maxDiscrepancies;
+    private int curEscalation;
+    private int curIteration;
+
+    public Worker(VrpPlsSolution solAndStuff, AtomicReference<Incumbent> best, SearchLimits limits, Random rand) {
+      VrpProblem problem = solAndStuff.getSolution().getProblem();
+      this.best = best;
+      this.limits = limits;
+      this.relaxer = new LnsRelaxer(solAndStuff.getRelaxationRandomness(), problem.getMaxDistance(), rand);
+      this.solver = new VrpSearcher(problem);
+      relaxer.setNumNeighbors(numNeighbors);
+      solver.setNumNeighbors(numNeighbors);
+      solver.setOrdering(orderingType, regretK);
+      this.maxIter = solAndStuff.getMaxIterations();
+      this.maxEscalation = solAndStuff.getMaxEscalation();
+      this.maxDiscrepancies = solAndStuff.getMaxDiscrepancies();
+      this.curEscalation = solAndStuff.getCurEscalation();
+      this.curIteration = solAndStuff.getCurIteration();
+    }
+
+    @Override
+    public Void call() {
+      Incumbent seen = best.get();
+      while (true) {
+        for (int n = curEscalation; n <= maxEscalation; n++) {
+          for (int i = curIteration; i < maxIter; i++) {
+            if (System.currentTimeMillis() >= limits.getDeadline() || limits.isCancelled() 
+                || Thread.currentThread().isInterrupted()) {
+              return null;
+            }
+
+            //another worker improved the solution, so treat it like our own success
+            Incumbent latest = best.get();
+            if (latest != seen) {
+              seen = latest;
+              i = 0;
+            }
+            VrpSolution sol = seen.sol;
+
+            VrpCpStats stats = (metrics != null) ? new VrpCpStats(metrics) : new VrpCpStats();
+            long relaxStart = System.nanoTime();
+            VrpSolution partialSol = relaxer.relaxShaw(sol, n, -1);
+
+            long solveStart = System.nanoTime();
+            VrpSolution newSol = solver.solve(partialSol, sol.getToursCost(), maxDiscrepancies, stats, true, limits);
+            numTries.incrementAndGet();
+            boolean improved = newSol != null && Math.abs(newSol.getToursCost() - sol.getToursCost()) > .001;
+            if (metrics != null) {
+              metrics.reportRelaxation(solveStart - relaxStart);
+              metrics.reportSolve(n, System.nanoTime() - solveStart, stats, improved, 
+                  improved ? newSol.getToursCost() : 0);
+            }
+            if (improved) {
+              Incumbent candidate = new Incumbent(newSol, n, 0);
+              if (publish(best, candidate)) {
+                seen = candidate;
+                if (publisher != null) {
+                  publisher.publish(newSol);
+                }
+                numSuccesses.incrementAndGet();
+              }
+              i = 0;
+            }
+            curEscalation = n;
+            curIteration = i;
+          }
+        }
+        curEscalation = 1;
+        curIteration = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import pls.vrp.metrics.SearchMetrics;
+
+/**
+ * Parallel portfolio search. Each task runs LNS from its own solution for a round, after which
+ * tasks exchange solutions with their neighbors and continue from the best one they saw.
+ *
+ * Rounds are run on an in-process thread pool with one thread per task, so that every task gets
+ * the whole round even when there are more tasks than cores. Subclasses can run rounds elsewhere
+ * by overriding runRound.
+ */
+public class PlsMaster {
+  private static final Logger LOG = Logger.getLogger(PlsMaster.class);
+
+  protected final Random rand;
+  private SearchMetrics metrics;
+  private IncumbentPublisher publisher;
+
+  public PlsMaster(Random rand) {
+    this.rand = rand;
+  }
+
+  /**
+   * Has every task record into the given metrics.
+   */
+  public void setMetrics(SearchMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Publishes each solution that's the best across all tasks so far. Tasks run in this process
+   * publish as soon as they improve, and the best at the end of each round is published too, for
+   * rounds run elsewhere.
+   */
+  public void setPublisher(IncumbentPublisher publisher) {
+    this.publisher = publisher;
+  }
+
+  /**
+   * @return
+   *     the best solution found
+   */
+  public VrpPlsSolution run(int numRuns, List<VrpPlsSolution> initSols, PlsMetadata metadata) {
+    VrpPlsSolution[] sols = initSols.toArray(new VrpPlsSolution[initSols.size()]);
+    VrpPlsSolution best = findBest(sols);
+    if (publisher != null) {
+      publisher.publish(best.getSolution());
+    }
+    for (int round = 0; round < numRuns; round++) {
+      long roundStart = System.currentTimeMillis();
+      VrpPlsSolution[] results = runRound(sols, roundStart + metadata.getRoundTime());
+      best = findBest(results);
+      if (publisher != null) {
+        publisher.publish(best.getSolution());
+      }
+      LOG.info("Round " + round + " took " + (System.currentTimeMillis() - roundStart) + " ms, best cost "
+          + best.getCost() + " (start " + metadata.getBestStartCost() + ")");
+      if (round < numRuns - 1) {
+        sols = exchange(results, round + 1, metadata);
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Runs one LNS round for every solution, concurrently.
+   *
+   * @param timeToFinish
+   *     wall-clock time in millis at which the round ends
+   * @return
+   *     the solutions at the end of the round, in the same order as the input
+   */
+  public VrpPlsSolution[] runRound(VrpPlsSolution[] sols, final long timeToFinish) {
+    ExecutorService executor = Executors.newFixedThreadPool(sols.length);
+    List<Future<VrpPlsSolution>> futures = new ArrayList<Future<VrpPlsSolution>>(sols.length);
+    for (final VrpPlsSolution sol : sols) {
+      final Random taskRand = new Random(rand.nextLong());
+      futures.add(executor.submit(new Callable<VrpPlsSolution>() {
+        @Override
+        public VrpPlsSolution call() {
+          VrpLnsRunner runner = new VrpLnsRunner();
+          runner.setMetrics(metrics);
+          runner.setPublisher(publisher);
+          return runner.run(sol, timeToFinish, taskRand)[0];
+        }
+      }));
+    }
+
+    VrpPlsSolution[] results = new VrpPlsSolution[sols.length];
+    try {
+      for (int i = 0; i < results.length; i++) {
+        results[i] = futures.get(i).get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for round to finish", ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException("PLS task failed", ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * Picks the starting solution of every task for the next round from the results of the
+   * previous one. A task continues from the best of its own result and its neighbors' results,
+   * taking over the escalation state of whichever one it picks.
+   *
+   * @param round
+   *     the round the returned solutions will be run in, used for assigning solution ids
+   */
+  public VrpPlsSolution[] exchange(final VrpPlsSolution[] results, int round, PlsMetadata metadata) {
+    int numTasks = results.length;
+    VrpPlsSolution globalBest = findBest(results);
+    VrpPlsSolution[] next = new VrpPlsSolution[numTasks];
+
+    for (int i = 0; i < numTasks; i++) {
+      VrpPlsSolution source = results[i];
+      if (metadata.getUseBestForAll()) {
+        source = globalBest;
+      } else {
+        for (int neighbor : chooseNeighbors(i, numTasks, metadata)) {
+          if (results[neighbor].getCost() < source.getCost()) {
+            source = results[neighbor];
+          }
+        }
+      }
+      next[i] = copy(source, round * numTasks + i, true);
+    }
+
+    //move the tasks that did worst onto the global best, starting its search over
+    if (!metadata.getUseBestForAll() && metadata.getHelperNeighbors() > 0) {
+      Integer[] worstFirst = new Integer[numTasks];
+      for (int i = 0; i < numTasks; i++) {
+        worstFirst[i] = i;
+      }
+      Arrays.sort(worstFirst, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return Double.compare(results[b].getCost(), results[a].getCost());
+        }
+      });
+      int numHelpers = Math.min(metadata.getHelperNeighbors(), numTasks - 1);
+      for (int j = 0; j < numHelpers; j++) {
+        int i = worstFirst[j];
+        next[i] = copy(globalBest, round * numTasks + i, false);
+      }
+    }
+
+    return next;
+  }
+
+  private List<Integer> chooseNeighbors(int task, int numTasks, PlsMetadata metadata) {
+    List<Integer> others = new ArrayList<Integer>(numTasks - 1);
+    for (int j = 1; j < numTasks; j++) {
+      others.add((task + j) % numTasks);
+    }
+    int k = Math.min(metadata.getK(), others.size());
+    if (!metadata.getAddFirstNeighbors()) {
+      Collections.shuffle(others, rand);
+    }
+    List<Integer> neighbors = new ArrayList<Integer>(others.subList(0, k));
+    //extra neighbors are drawn at random from outside the first k
+    List<Integer> rest = new ArrayList<Integer>(others.subList(k, others.size()));
+    Collections.shuffle(rest, rand);
+    neighbors.addAll(rest.subList(0, Math.min(metadata.getExtraNeighbors(), rest.size())));
+    return neighbors;
+  }
+
+  /**
+   * @param keepState
+   *     whether to carry over the escalation state, or to start the search over
+   */
+  protected static VrpPlsSolution copy(VrpPlsSolution source, int solId, boolean keepState) {
+    VrpPlsSolution copy = new VrpPlsSolution(source.getSolution(), source.getMaxIterations(),
+        source.getMaxEscalation(), source.getRelaxationRandomness(), source.getMaxDiscrepancies(),
+        solId, source.getSolutionId());
+    if (keepState) {
+      copy.setCurEscalation(source.getCurEscalation());
+      copy.setCurIteration(source.getCurIteration());
+    } else {
+      copy.setCurEscalation(1);
+      copy.setCurIteration(0);
+    }
+    return copy;
+  }
+
+  protected static VrpPlsSolution findBest(VrpPlsSolution[] sols) {
+    VrpPlsSolution best = sols[0];
+    for (VrpPlsSolution sol : sols) {
+      if (sol.getCost() < best.getCost()) {
+        best = sol;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp;
+
+/**
+ * Settings for how solutions are shared between tasks at the end of each PLS round.
+ */
+public class PlsMetadata {
+  //number of ring neighbors whose results each task looks at
+  private int k;
+  private double bestStartCost;
+  private int roundTime;
+  //if true, every task continues from the global best after each round
+  private boolean useBestForAll;
+  //number of extra random neighbors each task looks at, chosen anew each round
+  private int extraNeighbors;
+  //number of tasks with the worst results that are moved onto the global best each round
+  private int helperNeighbors;
+  //if false, the k neighbors are chosen at random each round instead of from the ring
+  private boolean addFirstNeighbors;
+  
+  public PlsMetadata(int k, double bestStartCost, int roundTime, boolean useBestForAll, int extraNeighbors,
+      int helperNeighbors, boolean addFirstNeighbors) {
+    this.k = k;
+    this.bestStartCost = bestStartCost;
+    this.roundTime = roundTime;
+    this.useBestForAll = useBestForAll;
+    this.extraNeighbors = extraNeighbors;
+    this.helperNeighbors = helperNeighbors;
+    this.addFirstNeighbors = addFirstNeighbors;
+  }
+  
+  public int getK() {
+    return k;
+  }
+  
+  public double getBestStartCost() {
+    return bestStartCost;
+  }
+  
+  public int getRoundTime() {
+    return roundTime;
+  }
+  
+  public boolean getUseBestForAll() {
+    return useBestForAll;
+  }
+  
+  public int getExtraNeighbors() {
+    return extraNeighbors;
+  }
+  
+  public int getHelperNeighbors() {
+    return helperNeighbors;
+  }
+  
+  public boolean getAddFirstNeighbors() {
+    return addFirstNeighbors;
+  }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding of a VrpProblem, used both for instance files and for shipping problems to
+ * workers. Everything is little-endian:
+ * <pre>
+ * header:  magic "VRPB" (int), version (short), flags (short), body length in bytes (long)
+ * body:    numCities, depotX, depotY, capacity (ints)
+ *          demands, service times, window starts, window ends, x coords, y coords (int[numCities] each)
+ *          if FLAG_DISTANCES, the distance matrix between customers row by row (double[numCities^2])
+ * trailer: CRC32 of the body (int)
+ * </pre>
+ * The header and the ints (16 + 24 * numCities bytes) are each a multiple of 8 bytes, so the distance block is aligned, and
+ * a mapped file can be viewed as int and double buffers without copying it.
+ */
+public class VrpBinaryFormat {
+  public static final int MAGIC = 0x42505256; //"VRPB" read little-endian
+  public static final short VERSION = 1;
+  
+  public static final short FLAG_DISTANCES = 1;
+  
+  private static final int HEADER_SIZE = 16;
+  private static final int NUM_COLUMNS = 6;
+  private static final int CRC_CHUNK_SIZE = 64 * 1024;
+  
+  /**
+   * Converts an instance in any format VrpReader understands.
+   * Usage: VrpBinaryFormat input output [withDistances]
+   */
+  public static void main(String[] args) throws IOException {
+    VrpProblem problem = VrpReader.readSolomon(new File(args[0]), Integer.MAX_VALUE);
+    boolean withDistances = args.length > 2 && Boolean.parseBoolean(args[2]);
+    write(problem, new File(args[1]), withDistances);
+  }
+  
+  /**
+   * @param withDistances
+   *     whether to include the distance matrix, which takes 8 bytes per pair of customers
+   */
+  public static void write(VrpProblem problem, DataOutput out, boolean withDistances) throws IOException {
+    ByteBuffer buf = encode(problem, withDistances);
+    out.write(buf.array(), 0, buf.limit());
+  }
+  
+  public static void write(VrpProblem problem, File f, boolean withDistances) throws IOException {
+    ByteBuffer buf = encode(problem, withDistances);
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(buf.array(), 0, buf.limit());
+    } finally {
+      out.close();
+    }
+  }
+  
+  public static VrpProblem read(DataInput in) throws IOException {
+    byte[] headerBytes = new byte[HEADER_SIZE];
+    in.readFully(headerBytes);
+    int bodyLength = readHeader(ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN));
+    byte[] body = new byte[bodyLength];
+    in.readFully(body);
+    byte[] trailer = new byte[4];
+    in.readFully(trailer);
+    
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    checkCrc(crc, ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN).getInt());
+    return decode(ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN), headerBytes, false);
+  }
+  
+  /**
+   * Maps the file rather than reading it. If it has distances, the problem reads them straight
+   * from the mapping.
+   */
+  public static VrpProblem read(File f) throws IOException {
+    FileInputStream in = new FileInputStream(f);
+    try {
+      FileChannel channel = in.getChannel();
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      mapped.order(ByteOrder.LITTLE_ENDIAN);
+      if (mapped.remaining() < HEADER_SIZE) {
+        throw new IOException(f + " is too short to be a binary instance");
+      }
+      int bodyLength = readHeader(mapped);
+      if (mapped.remaining() != bodyLength + 4) {
+        throw new IOException(f + " is truncated");
+      }
+      ByteBuffer body = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+      body.limit(bodyLength);
+      
+      CRC32 crc = new CRC32();
+      byte[] chunk = new byte[CRC_CHUNK_SIZE];
+      ByteBuffer crcView = body.duplicate();
+      while (crcView.hasRemaining()) {
+        int len = Math.min(chunk.length, crcView.remaining());
+        crcView.get(chunk, 0, len);
+        crc.update(chunk, 0, len);
+      }
+      checkCrc(crc, mapped.getInt(HEADER_SIZE + bodyLength));
+      
+      mapped.position(0);
+      byte[] headerBytes = new byte[HEADER_SIZE];
+      mapped.get(headerBytes);
+      return decode(body, headerBytes, true);
+    } finally {
+      in.close();
+    }
+  }
+  
+  /**
+   * @return
+   *     whether the file starts with the magic number
+   */
+  public static boolean isBinary(File f) throws IOException {
+    if (f.length() < HEADER_SIZE) {
+      return false;
+    }
+    FileInputStream in = new FileInputStream(f);
+    try {
+      byte[] magic = new byte[4];
+      int read = 0;
+      while (read < magic.length) {
+        int n = in.read(magic, read, magic.length - read);
+        if (n < 0) {
+          return false;
+        }
+        read += n;
+      }
+      return ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+  
+  private static ByteBuffer encode(VrpProblem problem, boolean withDistances) throws IOException {
+    int n = problem.getNumCities();
+    long bodyLength = 4L * (4 + NUM_COLUMNS * n) + (withDistances ? 8L * n * n : 0);
+    if (HEADER_SIZE + bodyLength + 4 > Integer.MAX_VALUE) {
+      throw new IOException("Problem with " + n + " customers is too large to encode"
+          + (withDistances ? " with distances" : ""));
+    }
+    
+    ByteBuffer buf = ByteBuffer.allocate((int)(HEADER_SIZE + bodyLength + 4)).order(ByteOrder.LITTLE_ENDIAN);
+    buf.putInt(MAGIC);
+    buf.putShort(VERSION);
+    buf.putShort(withDistances ? FLAG_DISTANCES : 0);
+    buf.putLong(bodyLength);
+    
+    buf.putInt(n);
+    buf.putInt(problem.getDepotX());
+    buf.putInt(problem.getDepotY());
+    buf.putInt(problem.getVehicleCapacity());
+    putInts(buf, problem.getDemands());
+    putInts(buf, problem.getServiceTimes());
+    putInts(buf, problem.getWindowStartTimes());
+    putInts(buf, problem.getWindowEndTimes());
+    putInts(buf, problem.getXCoors());
+    putInts(buf, problem.getYCoors());
+    if (withDistances) {
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          buf.putDouble(problem.getDistance(i, j));
+        }
+      }
+    }
+    
+    CRC32 crc = new CRC32();
+    crc.update(buf.array(), HEADER_SIZE, (int)bodyLength);
+    buf.putInt((int)crc.getValue());
+    buf.flip();
+    return buf;
+  }
+  
+  private static void putInts(ByteBuffer buf, int[] values) {
+    buf.asIntBuffer().put(values);
+    buf.position(buf.position() + 4 * values.length);
+  }
+  
+  /**
+   * Checks the header and leaves the buffer positioned after it.
+   * 
+   * @return
+   *     the length of the body
+   */
+  private static int readHeader(ByteBuffer header) throws IOException {
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a binary VRP instance");
+    }
+    short version = header.getShort();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary instance version " + version);
+    }
+    header.getShort();
+    long bodyLength = header.getLong();
+    if (bodyLength < 16 || bodyLength > Integer.MAX_VALUE - HEADER_SIZE - 4) {
+      throw new IOException("Bad binary instance body length " + bodyLength);
+    }
+    return (int)bodyLength;
+  }
+  
+  private static void checkCrc(CRC32 crc, int expected) throws IOException {
+    if ((int)crc.getValue() != expected) {
+      throw new IOException("Binary instance checksum mismatch");
+    }
+  }
+  
+  /**
+   * @param mapped
+   *     whether the body is a mapping, whose distances can be used in place
+   */
+  private static VrpProblem decode(ByteBuffer body, byte[] headerBytes, boolean mapped) throws IOException {
+    short flags = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN).getShort(6);
+    int n = body.getInt();
+    int depotX = body.getInt();
+    int depotY = body.getInt();
+    int capacity = body.getInt();
+    long expectedLength = 4L * (4 + NUM_COLUMNS * n) + ((flags & FLAG_DISTANCES) != 0 ? 8L * n * n : 0);
+    if (n < 0 || expectedLength != body.limit()) {
+      throw new IOException("Binary instance body doesn't match its " + n + " customers");
+    }
+    int[] demands = getInts(body, n);
+    int[] serviceTimes = getInts(body, n);
+    int[] windowStartTimes = getInts(body, n);
+    int[] windowEndTimes = getInts(body, n);
+    int[] xCoors = getInts(body, n);
+    int[] yCoors = getInts(body, n);
+    
+    if ((flags & FLAG_DISTANCES) == 0) {
+      return new VrpProblem(demands, xCoors, yCoors, serviceTimes, windowStartTimes, windowEndTimes,
+          depotX, depotY, capacity);
+    }
+    DoubleBuffer dists = body.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    if (!mapped) {
+      //a heap array is faster to read than a view of a byte array
+      double[] copy = new double[dists.remaining()];
+      dists.get(copy);
+      dists = DoubleBuffer.wrap(copy);
+    }
+    return new VrpProblem(demands, xCoors, yCoors, serviceTimes, windowStartTimes, windowEndTimes,
+        depotX, depotY, capacity, VrpDistances.precomputed(xCoors, yCoors, dists));
+  }
+  
+  private static int[] getInts(ByteBuffer buf, int n) {
+    int[] values = new int[n];
+    buf.asIntBuffer().get(values);
+    buf.position(buf.position() + 4 * n);
+    return values;
+  }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Euclidean distances between customers, stored in one of several ways so that large instances
+ * don't need a full matrix. Every mode is safe to share between threads.
+ */
+public abstract class VrpDistances {
+  
+  public enum Mode {
+    //full double[n][n] matrix, computed up front
+    FULL,
+    //upper triangle of the matrix as floats in one contiguous block, a quarter of the memory
+    TRIANGULAR,
+    //computed from the coordinates on every call
+    ON_THE_FLY,
+    //rows computed on demand and kept in a fixed size direct-mapped cache. Neighbouring lookups
+    //usually map to different rows, so it only pays off when a few rows are read over and over
+    CACHED_ROWS,
+    //full matrix read from a binary instance file, possibly memory mapped
+    PRECOMPUTED
+  }
+  
+  /** System property that selects the mode, overriding the default for the problem size. */
+  public static final String MODE_PROPERTY = "vrp.distances";
+  
+  /** Above this many customers, the default mode is ON_THE_FLY instead of FULL. */
+  public static final int MAX_FULL_CITIES = 2000;
+  
+  private static final int NUM_CACHED_ROWS = 1024;
+  
+  protected final int[] xCoors;
+  protected final int[] yCoors;
+  
+  protected VrpDistances(int[] xCoors, int[] yCoors) {
+    this.xCoors = xCoors;
+    this.yCoors = yCoors;
+  }
+  
+  public static Mode defaultMode(int numCities) {
+    String mode = System.getProperty(MODE_PROPERTY);
+    if (mode != null) {
+      return Mode.valueOf(mode.toUpperCase());
+    }
+    return numCities <= MAX_FULL_CITIES ? Mode.FULL : Mode.ON_THE_FLY;
+  }
+  
+  public static VrpDistances create(Mode mode, int[] xCoors, int[] yCoors) {
+    switch (mode) {
+    case FULL:
+      return new Full(xCoors, yCoors);
+    case TRIANGULAR:
+      return new Triangular(xCoors, yCoors);
+    case ON_THE_FLY:
+      return new OnTheFly(xCoors, yCoors);
+    case CACHED_ROWS:
+      return new CachedRows(xCoors, yCoors, NUM_CACHED_ROWS);
+    case PRECOMPUTED:
+      throw new IllegalArgumentException("Precomputed distances can only come from a binary instance");
+    default:
+      throw new IllegalArgumentException("Unknown distance mode " + mode);
+    }
+  }
+  
+  /**
+   * @param dists
+   *     the full matrix, row by row. It's only read with absolute gets, so it may be shared.
+   */
+  public static VrpDistances precomputed(int[] xCoors, int[] yCoors, DoubleBuffer dists) {
+    return new Precomputed(xCoors, yCoors, dists);
+  }
+  
+  public abstract double get(int custId1, int custId2);
+  
+  public abstract Mode getMode();
+  
+  protected double compute(int custId1, int custId2) {
+    long xDiff = xCoors[custId1] - xCoors[custId2];
+    long yDiff = yCoors[custId1] - yCoors[custId2];
+    return Math.sqrt(xDiff * xDiff + yDiff * yDiff);
+  }
+  
+  protected double[] computeRow(int custId) {
+    double[] row = new double[xCoors.length];
+    for (int j = 0; j < row.length; j++) {
+      row[j] = compute(custId, j);
+    }
+    return row;
+  }
+  
+  /**
+   * The largest distance between any two customers. The two farthest customers are both on the
+   * convex hull, so only pairs of hull points are compared.
+   */
+  public double getMaxDistance() {
+    int[] hull = convexHull();
+    long maxSquared = 0;
+    for (int i = 0; i < hull.length; i++) {
+      for (int j = i + 1; j < hull.length; j++) {
+        long xDiff = xCoors[hull[i]] - xCoors[hull[j]];
+        long yDiff = yCoors[hull[i]] - yCoors[hull[j]];
+        maxSquared = Math.max(maxSquared, xDiff * xDiff + yDiff * yDiff);
+      }
+    }
+    return Math.sqrt(maxSquared);
+  }
+  
+  /**
+   * Andrew's monotone chain.
+   * 
+   * @return
+   *     ids of the customers on the hull
+   */
+  private int[] convexHull() {
+    int n = xCoors.length;
+    Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        if (xCoors[a] != xCoors[b]) {
+          return xCoors[a] < xCoors[b] ? -1 : 1;
+        }
+        return yCoors[a] < yCoors[b] ? -1 : (yCoors[a] == yCoors[b] ? 0 : 1);
+      }
+    });
+    if (n < 3) {
+      int[] hull = new int[n];
+      for (int i = 0; i < n; i++) {
+        hull[i] = sorted[i];
+      }
+      return hull;
+    }
+    int[] hull = new int[2 * n];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      while (k >= 2 && cross(hull[k - 2], hull[k - 1], sorted[i]) <= 0) {
+        k--;
+      }
+      hull[k++] = sorted[i];
+    }
+    for (int i = n - 2, lowerSize = k + 1; i >= 0; i--) {
+      while (k >= lowerSize && cross(hull[k - 2], hull[k - 1], sorted[i]) <= 0) {
+        k--;
+      }
+      hull[k++] = sorted[i];
+    }
+    //the last point is the same as the first
+    return Arrays.copyOf(hull, Math.max(k - 1, 1));
+  }
+  
+  private long cross(int o, int a, int b) {
+    return (long)(xCoors[a] - xCoors[o]) * (yCoors[b] - yCoors[o]) 
+        - (long)(yCoors[a] - yCoors[o]) * (xCoors[b] - xCoors[o]);
+  }
+  
+  private static class Full extends VrpDistances {
+    private final double[][] dists;
+    
+    public Full(int[] xCoors, int[] yCoors) {
+      super(xCoors, yCoors);
+      dists = new double[xCoors.length][];
+      for (int i = 0; i < dists.length; i++) {
+        dists[i] = computeRow(i);
+      }
+    }
+    
+    @Override
+    public double get(int custId1, int custId2) {
+      return dists[custId1][custId2];
+    }
+    
+    @Override
+    public Mode getMode() {
+      return Mode.FULL;
+    }
+  }
+  
+  private static class Triangular extends VrpDistances {
+    private final int n;
+    private final float[] dists;
+    
+    public Triangular(int[] xCoors, int[] yCoors) {
+      super(xCoors, yCoors);
+      n = xCoors.length;
+      long size = (long)n * (n - 1) / 2;
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Too many customers for a triangular distance matrix: " + n);
+      }
+      dists = new float[(int)size];
+      int index = 0;
+      for (int i = 0; i < n; i++) {
+        for (int j = i + 1; j < n; j++) {
+          dists[index++] = (float)compute(i, j);
+        }
+      }
+    }
+    
+    @Override
+    public double get(int custId1, int custId2) {
+      if (custId1 == custId2) {
+        return 0;
+      }
+      int i = Math.min(custId1, custId2);
+      int j = Math.max(custId1, custId2);
+      //rows before i hold n-1 + n-2 + ... + n-i entries
+      long rowStart = (long)i * (2 * n - i - 1) / 2;
+      return dists[(int)(rowStart + j - i - 1)];
+    }
+    
+    @Override
+    public Mode getMode() {
+      return Mode.TRIANGULAR;
+    }
+  }
+  
+  private static class OnTheFly extends VrpDistances {
+    public OnTheFly(int[] xCoors, int[] yCoors) {
+      super(xCoors, yCoors);
+    }
+    
+    @Override
+    public double get(int custId1, int custId2) {
+      return compute(custId1, custId2);
+    }
+    
+    @Override
+    public Mode getMode() {
+      return Mode.ON_THE_FLY;
+    }
+  }
+  
+  private static class Precomputed extends VrpDistances {
+    private final int n;
+    private final DoubleBuffer dists;
+    
+    public Precomputed(int[] xCoors, int[] yCoors, DoubleBuffer dists) {
+      super(xCoors, yCoors);
+      n = xCoors.length;
+      if (dists.remaining() != (long)n * n) {
+        throw new IllegalArgumentException("Expected " + ((long)n * n) + " distances, got " + dists.remaining());
+      }
+      this.dists = dists.slice();
+    }
+    
+    @Override
+    public double get(int custId1, int custId2) {
+      return dists.get(custId1 * n + custId2);
+    }
+    
+    @Override
+    public Mode getMode() {
+      return Mode.PRECOMPUTED;
+    }
+  }
+  
+  /**
+   * Direct-mapped cache of rows. A row's slot is replaced whenever another row that maps to it
+   * is needed. Slots are only ever swapped for whole immutable rows, so no locking is needed.
+   */
+  private static class CachedRows extends VrpDistances {
+    private final AtomicReferenceArray<CachedRow> slots;
+    
+    public CachedRows(int[] xCoors, int[] yCoors, int numSlots) {
+      super(xCoors, yCoors);
+      slots = new AtomicReferenceArray<CachedRow>(Math.min(numSlots, xCoors.length));
+    }
+    
+    @Override
+    public double get(int custId1, int custId2) {
+      CachedRow row = slots.get(custId1 % slots.length());
+      if (row != null && row.custId == custId1) {
+        return row.dists[custId2];
+      }
+      //distances are symmetric, so the other customer's row will do
+      row = slots.get(custId2 % slots.length());
+      if (row != null && row.custId == custId2) {
+        return row.dists[custId1];
+      }
+      row = new CachedRow(custId1, computeRow(custId1));
+      slots.set(custId1 % slots.length(), row);
+      return row.dists[custId2];
+    }
+    
+    @Override
+    public Mode getMode() {
+      return Mode.CACHED_ROWS;
+    }
+  }
+  
+  private static class CachedRow {
+    public final int custId;
+    public final double[] dists;
+    
+    public CachedRow(int custId, double[] dists) {
+      this.custId = custId;
+      this.dists = dists;
+    }
+  }
+}
@@ -17,16 +17,30 @@
 package pls.vrp;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class VrpGreedyInitializer {
   private static final double TIME_DIFF_WEIGHT = .4;
   private static final double DISTANCE_WEIGHT = .4;
   private static final double URGENCY_WEIGHT = .2;
   
+  //ranges that random weights are drawn from
+  private static final double MAX_RANDOM_TIME_DIFF_WEIGHT = .3;
+  private static final double MAX_RANDOM_DISTANCE_WEIGHT = .5;
+  private static final double MAX_RANDOM_URGENCY_WEIGHT = .2;
+  
+  private static final int CUSTS_PER_CELL = 2;
+  //slack for distances stored with less precision than the grid computes them with
+  private static final double DISTANCE_SLACK = 1e-6;
+  
   private double timeDiffWeight = TIME_DIFF_WEIGHT;
   private double distanceWeight = DISTANCE_WEIGHT;
   private double urgencyWeight = URGENCY_WEIGHT;
@@ -37,6 +51,64 @@ public class VrpGreedyInitializer {
     this.urgencyWeight = urgencyWeight;
   }
   
+  /**
+   * An initializer with weights drawn at random, for diversified starts.
+   */
+  public static VrpGreedyInitializer withRandomWeights(Random rand) {
+    double timeDiffWeight = rand.nextDouble() * MAX_RANDOM_TIME_DIFF_WEIGHT;
+    double distanceWeight = rand.nextDouble() * MAX_RANDOM_DISTANCE_WEIGHT;
+    double urgencyWeight = rand.nextDouble() * MAX_RANDOM_URGENCY_WEIGHT;
+    return new VrpGreedyInitializer(timeDiffWeight, distanceWeight, urgencyWeight);
+  }
+  
+  /**
+   * Builds numStarts solutions, each with weights drawn at random, across numThreads threads.
+   * The weights are all drawn up front, so the result doesn't depend on scheduling.
+   * 
+   * @return
+   *     the numBest cheapest solutions, cheapest first
+   */
+  public static List<VrpSolution> bestOfRandomStarts(final VrpProblem problem, int numStarts, int numBest, 
+      Random rand, int numThreads) {
+    List<VrpGreedyInitializer> initializers = new ArrayList<VrpGreedyInitializer>(numStarts);
+    for (int i = 0; i < numStarts; i++) {
+      initializers.add(withRandomWeights(rand));
+    }
+    
+    List<VrpSolution> sols = new ArrayList<VrpSolution>(numStarts);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<VrpSolution>> futures = new ArrayList<Future<VrpSolution>>(numStarts);
+      for (final VrpGreedyInitializer initializer : initializers) {
+        futures.add(executor.submit(new Callable<VrpSolution>() {
+          @Override
+          public VrpSolution call() {
+            return initializer.nearestNeighborHeuristic(problem);
+          }
+        }));
+      }
+      for (Future<VrpSolution> future : futures) {
+        sols.add(future.get());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while building starting solutions", ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException("Building a starting solution failed", ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    
+    //stable, so ties stay in the order they were drawn
+    Collections.sort(sols, new Comparator<VrpSolution>() {
+      @Override
+      public int compare(VrpSolution sol1, VrpSolution sol2) {
+        return Double.compare(sol1.getToursCost(), sol2.getToursCost());
+      }
+    });
+    return new ArrayList<VrpSolution>(sols.subList(0, Math.min(numBest, sols.size())));
+  }
+  
   public VrpSolution nearestNeighborHeuristic(VrpProblem problem) {
     return nearestNeighborHeuristic(problem, new ArrayList<List<Integer>>());
   }
@@ -45,10 +117,7 @@ public class VrpGreedyInitializer {
    * Nearest neighbor heuristic from Solomon paper.
    */
   public VrpSolution nearestNeighborHeuristic(VrpProblem problem, List<List<Integer>> routes) {
-    Set<Integer> remainingNodes = new HashSet<Integer>();
-    for (int i = 0; i < problem.getNumCities(); i++) {
-      remainingNodes.add(i);
-    }
+    CustomerGrid remainingNodes = new CustomerGrid(problem, CUSTS_PER_CELL);
     for (List<Integer> route : routes) {
       for (Integer node : route) {
         remainingNodes.remove(node);
@@ -60,14 +129,15 @@ public class VrpGreedyInitializer {
     int curNodeId = -1;
     double curVisitTime = 0;
     int remCapacity = problem.getVehicleCapacity();
+    Candidate closest = new Candidate();
     while (remainingNodes.size() > 0) {
-      Number[] ret = findClosest(curNodeId, curVisitTime, remCapacity, remainingNodes, problem);
-      int nextNodeId = (Integer)ret[0];
+      findClosest(curNodeId, curVisitTime, remCapacity, remainingNodes, problem, closest);
+      int nextNodeId = closest.nodeId;
       if (nextNodeId != -1) {
         remainingNodes.remove(nextNodeId);
         curRoute.add(nextNodeId);
         curNodeId = nextNodeId;
-        curVisitTime = (Double)ret[1];
+        curVisitTime = closest.visitTime;
         remCapacity -= problem.getDemands()[nextNodeId];
       } else {
         curRoute = new ArrayList<Integer>();
@@ -82,53 +152,115 @@ public class VrpGreedyInitializer {
   }
   
   /**
+   * The best node to visit next and when it would be visited.
+   */
+  private static class Candidate {
+    private int nodeId;
+    private double visitTime;
+    private double val;
+  }
+  
+  /**
+   * Searches the grid outward from the last node. A node at least distance d away can't score
+   * less than (timeDiffWeight + distanceWeight) * d, because the time until its visit is at least
+   * d and its urgency is never negative, so the search stops at the first ring of cells that
+   * are too far away to beat the best so far. That only holds for nonnegative weights and
+   * distances that come from the coordinates, and otherwise every cell is searched.
+   * 
    * @param curLastId
    *     -1 if it's the depot
-   * @param curLastVisitTime
-   * @param curLastServiceTime
-   * @param remainingNodes
-   * @param problem
-   * @return
-   *     array containing best node id and visit time
+   * @param closest
+   *     filled in with the best node id, -1 if nothing fits, and its visit time
    */
-  private Number[] findClosest(int curLastId, double curLastVisitTime, int remCapacity,
-      Set<Integer> remainingNodes, VrpProblem problem) {
+  private void findClosest(int curLastId, double curLastVisitTime, int remCapacity,
+      CustomerGrid remainingNodes, VrpProblem problem, Candidate closest) {
+    int curLastServiceTime = (curLastId == -1) ? 0 : problem.getServiceTimes()[curLastId];
+    double departTime = curLastVisitTime + curLastServiceTime;
+    double x = (curLastId == -1) ? problem.getDepotX() : problem.getXCoors()[curLastId];
+    double y = (curLastId == -1) ? problem.getDepotY() : problem.getYCoors()[curLastId];
+    
+    double pruneWeight = timeDiffWeight + distanceWeight;
+    boolean prune = timeDiffWeight >= 0 && distanceWeight >= 0 && urgencyWeight >= 0 && pruneWeight > 0
+        && problem.getDistanceMode() != VrpDistances.Mode.PRECOMPUTED;
+    
+    closest.val = Integer.MAX_VALUE;
+    closest.nodeId = -1;
+    closest.visitTime = -1;
+    
+    int numCols = remainingNodes.getNumCols();
+    int numRows = remainingNodes.getNumRows();
+    int col = remainingNodes.getCol(x);
+    int row = remainingNodes.getRow(y);
+    int maxRing = Math.max(Math.max(col, numCols - 1 - col), Math.max(row, numRows - 1 - row));
+    for (int ring = 0; ring <= maxRing; ring++) {
+      //there are ring - 1 whole cells between this one and the ring
+      if (prune && ring > 1 
+          && pruneWeight * (ring - 1) * remainingNodes.getCellSize() * (1 - DISTANCE_SLACK) > closest.val) {
+        break;
+      }
+      int minCol = Math.max(0, col - ring);
+      int maxCol = Math.min(numCols - 1, col + ring);
+      int minRow = Math.max(0, row - ring);
+      int maxRow = Math.min(numRows - 1, row + ring);
+      for (int r = minRow; r <= maxRow; r++) {
+        if (r == row - ring || r == row + ring) {
+          for (int c = minCol; c <= maxCol; c++) {
+            searchCell(remainingNodes.getCell(c, r), curLastId, departTime, x, y, remCapacity, prune, 
+                pruneWeight, remainingNodes, problem, closest);
+          }
+        } else {
+          //rows in between only have the cells at the ring's two ends
+          if (col - ring >= 0) {
+            searchCell(remainingNodes.getCell(col - ring, r), curLastId, departTime, x, y, remCapacity, prune, 
+                pruneWeight, remainingNodes, problem, closest);
+          }
+          if (col + ring < numCols) {
+            searchCell(remainingNodes.getCell(col + ring, r), curLastId, departTime, x, y, remCapacity, prune, 
+                pruneWeight, remainingNodes, problem, closest);
+          }
+        }
+      }
+    }
+  }
+  
+  private void searchCell(int cell, int curLastId, double departTime, double x, double y, int remCapacity,
+      boolean prune, double pruneWeight, CustomerGrid remainingNodes, VrpProblem problem, Candidate closest) {
+    int numCusts = remainingNodes.getNumCusts(cell);
+    if (numCusts == 0 || remainingNodes.getMinDemand(cell) > remCapacity) {
+      return;
+    }
+    double minDistance = remainingNodes.getMinDistance(cell, x, y) * (1 - DISTANCE_SLACK);
+    if (prune && (pruneWeight * minDistance > closest.val 
+        || remainingNodes.getMaxWindowEnd(cell) < departTime + minDistance)) {
+      return;
+    }
     
     int[] demands = problem.getDemands();
     int[] windowStartTimes = problem.getWindowStartTimes();
     int[] windowEndTimes = problem.getWindowEndTimes();
-    double[][] distances = problem.getDistances();
     double[] distancesFromDepot = problem.getDistancesFromDepot();
-    int[] serviceTimes = problem.getServiceTimes();
-    int curLastServiceTime = (curLastId == -1) ? 0 : serviceTimes[curLastId];
-    
-    double bestVal = Integer.MAX_VALUE;
-    int bestNodeId = -1;
-    double bestNodeVisitTime = -1;
     
     //bj = time when service begins, for depot its 0
-    Iterator<Integer> iter = remainingNodes.iterator();
-    while (iter.hasNext()) {
-      int nodeId = iter.next();
+    for (int i = 0; i < numCusts; i++) {
+      int nodeId = remainingNodes.getCust(cell, i);
       if (demands[nodeId] > remCapacity) {
         continue;
       }
       
-      double distance = (curLastId == -1) ? distancesFromDepot[nodeId] : distances[curLastId][nodeId];
-      double minVisitTime = Math.max(windowStartTimes[nodeId], curLastVisitTime + curLastServiceTime + distance);
+      double distance = (curLastId == -1) ? distancesFromDepot[nodeId] : problem.getDistance(curLastId, nodeId);
+      double minVisitTime = Math.max(windowStartTimes[nodeId], departTime + distance);
       if (minVisitTime > windowEndTimes[nodeId]) {
         continue;
       }
-      double timeDiff = minVisitTime - (curLastVisitTime + curLastServiceTime);
-      double urgency = windowEndTimes[nodeId] - (curLastVisitTime + curLastServiceTime + distance);
+      double timeDiff = minVisitTime - departTime;
+      double urgency = windowEndTimes[nodeId] - (departTime + distance);
       double val = timeDiff * timeDiffWeight + distance * distanceWeight + urgency * urgencyWeight;
-      if (val < bestVal) {
-        bestVal = val;
-        bestNodeId = nodeId;
-        bestNodeVisitTime = minVisitTime;
+      //ties go to the lowest id, the order nodes used to be scanned in
+      if (val < closest.val || (val == closest.val && closest.nodeId >= 0 && nodeId < closest.nodeId)) {
+        closest.val = val;
+        closest.nodeId = nodeId;
+        closest.visitTime = minVisitTime;
       }
     }
-    
-    return new Number[] {new Integer(bestNodeId), new Double(bestNodeVisitTime)};
   }
 }
@@ -16,17 +16,149 @@
 
 package pls.vrp;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.log4j.Logger;
 
+import pls.vrp.alns.AdaptiveOperatorSelector;
+import pls.vrp.alns.OperatorStats;
+import pls.vrp.hm.CustOrdering;
 import pls.vrp.hm.VrpCpStats;
+import pls.vrp.hm.SearchLimits;
 import pls.vrp.hm.VrpSearcher;
+import pls.vrp.metrics.SearchMetrics;
 
 public class VrpLnsRunner {
   
   private static final Logger LOG = Logger.getLogger(VrpLnsRunner.class);
+  
+  private int numTries;
+  private int numSuccesses;
+  private int numNeighbors;
+  private boolean adaptive;
+  //set explicitly, and so kept across runs
+  private AdaptiveOperatorSelector operatorSelector;
+  private AdaptiveOperatorSelector lastSelector;
+  private Checkpointer checkpointer;
+  private SearchMetrics metrics;
+  private IncumbentPublisher publisher;
+  private long nodeBudget = SearchLimits.NO_NODE_BUDGET;
+  private ExecutorService searchExecutor;
+  private CustOrdering.Type orderingType = CustOrdering.Type.MAX_MIN_COST;
+  private int regretK = 2;
+  private int minParallelCusts;
+  //limits of the run in progress, which cancel reaches into
+  private volatile SearchLimits limits;
+  //set by cancel until the run ends, so that a cancel before run creates its limits still counts
+  private volatile boolean cancelled;
+  
+  /**
+   * Restricts relaxation and reinsertion to each customer's numNeighbors nearest customers.
+   * 0, the default, considers all of them.
+   */
+  public void setNumNeighbors(int numNeighbors) {
+    this.numNeighbors = numNeighbors;
+  }
 
+  /**
+   * Chooses among removal operators adaptively instead of always using Shaw removal. Unless an
+   * operator selector is given, each run starts with the default portfolio.
+   */
+  public void setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+  
+  /**
+   * Uses the given operators for removal, keeping their weights across runs.
+   */
+  public void setOperatorSelector(AdaptiveOperatorSelector operatorSelector) {
+    this.operatorSelector = operatorSelector;
+    this.adaptive = true;
+  }
+  
+  /**
+   * The selector used by the last adaptive run, for its per-operator stats.
+   */
+  public AdaptiveOperatorSelector getOperatorSelector() {
+    return lastSelector;
+  }
+  
+  /**
+   * Records timings and outcomes of relaxations, solves, insertions and reversions into the given
+   * metrics, which may be shared with other runners.
+   */
+  public void setMetrics(SearchMetrics metrics) {
+    this.metrics = metrics;
+  }
+  
+  /**
+   * Caps the nodes evaluated by each reinsertion search, which otherwise runs until its
+   * discrepancies are used up or the run's deadline passes.
+   */
+  public void setNodeBudget(long nodeBudget) {
+    this.nodeBudget = nodeBudget;
+  }
+  
+  /**
+   * Chooses the order reinsertion searches insert customers in. See {@link CustOrdering.Type}.
+   */
+  public void setOrdering(CustOrdering.Type orderingType, int regretK) {
+    this.orderingType = orderingType;
+    this.regretK = regretK;
+  }
+  
+  /**
+   * Splits reinsertion searches with at least minCustomers customers to insert into subtrees that
+   * run as tasks on the given executor. See {@link VrpSearcher#setParallel}.
+   */
+  public void setParallelSearch(ExecutorService executor, int minCustomers) {
+    this.searchExecutor = executor;
+    this.minParallelCusts = minCustomers;
+  }
+  
+  /**
+   * Makes the run in progress return soon with the best solution so far, even from the middle
+   * of a search. A cancel before the run has started applies to the next run. Safe to call from
+   * any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+    SearchLimits runLimits = limits;
+    if (runLimits != null) {
+      runLimits.cancel();
+    }
+  }
+  
+  /**
+   * Publishes the starting solution and every improvement on it as soon as they're found.
+   */
+  public void setPublisher(IncumbentPublisher publisher) {
+    this.publisher = publisher;
+  }
+  
+  /**
+   * Periodically hands the run's state to the given checkpointer, which writes it out in the
+   * background. A final checkpoint is submitted when a run ends.
+   */
+  public void setCheckpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+  }
+  
+  /**
+   * Continues the run saved in the given checkpoint file for the time it had left. Runs that
+   * don't choose operators adaptively pick up with exactly the same sequence of relaxations.
+   */
+  public VrpPlsSolution[] resume(File checkpointFile, VrpProblem problem) throws IOException {
+    LnsCheckpoint checkpoint = LnsCheckpoint.read(checkpointFile, problem);
+    LOG.info("Resuming from " + checkpointFile + " with cost " + checkpoint.getSolution().getToursCost()
+        + " and " + checkpoint.getTimeLeft() + " ms left");
+    return run(checkpoint.toPlsSolution(), System.currentTimeMillis() + checkpoint.getTimeLeft(), 
+        checkpoint.getRandom());
+  }
+  
   public VrpPlsSolution[] run(VrpPlsSolution solAndStuff, long timeToFinish, Random rand) {
     long startTime = System.currentTimeMillis();
     
@@ -34,37 +166,98 @@ public class VrpLnsRunner {
     VrpProblem problem = sol.getProblem();
     LnsRelaxer relaxer = new LnsRelaxer(solAndStuff.getRelaxationRandomness(), problem.getMaxDistance(), rand);
     VrpSearcher solver = new VrpSearcher(problem);
+    relaxer.setNumNeighbors(numNeighbors);
+    solver.setNumNeighbors(numNeighbors);
+    solver.setParallel(searchExecutor, minParallelCusts);
+    solver.setOrdering(orderingType, regretK);
+    AdaptiveOperatorSelector selector = null;
+    if (adaptive) {
+      selector = operatorSelector;
+      if (selector == null) {
+        //the default portfolio is bound to this run's relaxer and random
+        selector = AdaptiveOperatorSelector.createDefault(relaxer, solAndStuff.getRelaxationRandomness(), rand);
+      }
+      lastSelector = selector;
+    }
 
-    int numTries = 0;
-    int numSuccesses = 0;
+    //searches check these themselves, so that a big neighborhood can't overrun the deadline
+    SearchLimits runLimits = new SearchLimits(timeToFinish, nodeBudget);
+    limits = runLimits;
+    if (cancelled) {
+      runLimits.cancel();
+    }
+    numTries = 0;
+    numSuccesses = 0;
     double beforeBestCost = sol.getToursCost();
     long regStartTime = System.currentTimeMillis();
-    outer:
-    while (true) {
-      for (int n = solAndStuff.getCurEscalation(); n <= solAndStuff.getMaxEscalation(); n++) { 
-        for (int i = solAndStuff.getCurIteration(); i < solAndStuff.getMaxIterations(); i++) {
-          if (System.currentTimeMillis() >= timeToFinish) {
-            break outer;
-          }
+    try {
+      if (publisher != null) {
+        publisher.publish(sol);
+      }
+      outer:
+      while (true) {
+        for (int n = solAndStuff.getCurEscalation(); n <= solAndStuff.getMaxEscalation(); n++) { 
+          for (int i = solAndStuff.getCurIteration(); i < solAndStuff.getMaxIterations(); i++) {
+            long now = System.currentTimeMillis();
+            if (now >= timeToFinish || runLimits.isCancelled()) {
+              if (checkpointer != null) {
+                //iteration i at escalation n hasn't started yet
+                checkpointer.submit(LnsCheckpoint.capture(solAndStuff, n, i, rand, Math.max(0, timeToFinish - now)));
+              }
+              break outer;
+            }
           
-          VrpCpStats stats = new VrpCpStats();
-          VrpSolution partialSol = relaxer.relaxShaw(sol, n, -1);
+            VrpCpStats stats = (metrics != null) ? new VrpCpStats(metrics) : new VrpCpStats();
+            int operator = -1;
+            VrpSolution partialSol;
+            long relaxStart = System.nanoTime();
+            if (selector != null) {
+              operator = selector.choose();
+              partialSol = selector.getOperator(operator).relax(sol, n);
+            } else {
+              partialSol = relaxer.relaxShaw(sol, n, -1);
+            }
           
-          VrpSolution newSol = solver.solve(partialSol, sol.getToursCost(), solAndStuff.getMaxDiscrepancies(), stats, true);
-          if (newSol != null && Math.abs(newSol.getToursCost() - sol.getToursCost()) > .001) {
-            sol = newSol;
-            solAndStuff.setSolution(sol);
-            i = 0;
-            numSuccesses++;
+            long solveStart = System.nanoTime();
+            VrpSolution newSol = solver.solve(partialSol, sol.getToursCost(), solAndStuff.getMaxDiscrepancies(), stats, true,
+                runLimits);
+            long solveNanos = System.nanoTime() - solveStart;
+            boolean improved = newSol != null && Math.abs(newSol.getToursCost() - sol.getToursCost()) > .001;
+            if (selector != null) {
+              selector.report(operator, improved ? sol.getToursCost() - newSol.getToursCost() : 0, solveNanos);
+            }
+            if (metrics != null) {
+              metrics.reportRelaxation(solveStart - relaxStart);
+              metrics.reportSolve(n, solveNanos, stats, improved, improved ? newSol.getToursCost() : 0);
+            }
+            if (improved) {
+              sol = newSol;
+              solAndStuff.setSolution(sol);
+              if (publisher != null) {
+                publisher.publish(sol);
+              }
+              i = 0;
+              numSuccesses++;
+            }
+            solAndStuff.setCurEscalation(n);
+            solAndStuff.setCurIteration(i);
+            numTries++;
+          
+            if (checkpointer != null) {
+              now = System.currentTimeMillis();
+              if (checkpointer.isDue(now)) {
+                checkpoint(solAndStuff, n, i, rand, timeToFinish - now);
+              }
+            }
           }
-          solAndStuff.setCurEscalation(n);
-          solAndStuff.setCurIteration(i);
-          numTries++;
         }
+        //LOG.info("Starting new search");
+        solAndStuff.setCurEscalation(1);
+        solAndStuff.setCurIteration(0);
       }
-      //LOG.info("Starting new search");
-      solAndStuff.setCurEscalation(1);
-      solAndStuff.setCurIteration(0);
+    } finally {
+      limits = null;
+      cancelled = false;
     }
     long regEndTime = System.currentTimeMillis();
     int regTime = (int)(regEndTime - regStartTime);
@@ -72,8 +265,44 @@ public class VrpLnsRunner {
     
     long endTime = System.currentTimeMillis();
     LOG.info("VrpLnsRunner took " + (endTime - startTime) + " ms");
+    if (selector != null) {
+      for (OperatorStats operatorStats : selector.getStats()) {
+        LOG.info(operatorStats);
+      }
+    }
     
     return new VrpPlsSolution[] {solAndStuff};
   }
   
+  /**
+   * Submits a checkpoint for continuing after iteration i at escalation n has finished.
+   */
+  private void checkpoint(VrpPlsSolution solAndStuff, int n, int i, Random rand, long timeLeft) {
+    //mirror how the loops above move on, where a new escalation starts at the current iteration
+    int nextN = n;
+    int nextI = i + 1;
+    if (nextI >= solAndStuff.getMaxIterations()) {
+      nextN++;
+      nextI = i;
+      if (nextN > solAndStuff.getMaxEscalation()) {
+        nextN = 1;
+        nextI = 0;
+      }
+    }
+    checkpointer.submit(LnsCheckpoint.capture(solAndStuff, nextN, nextI, rand, timeLeft));
+  }
+  
+  /**
+   * Number of relax-and-reinsert attempts made during the last call to run.
+   */
+  public int getNumTries() {
+    return numTries;
+  }
+  
+  /**
+   * Number of attempts during the last call to run that found an improved solution.
+   */
+  public int getNumSuccesses() {
+    return numSuccesses;
+  }
 }
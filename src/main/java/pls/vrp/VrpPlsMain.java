@@ -0,0 +1,164 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pls.vrp;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import pls.vrp.dist.SocketPlsMaster;
+import pls.vrp.metrics.MetricsReporter;
+import pls.vrp.metrics.SearchMetrics;
+
+/**
+ * Runs the parallel portfolio search.
+ * 
+ * Usage: VrpPlsMain numTasks numRuns [roundTime [k [runLocal|inputFile [extraNeighbors [helperNeighbors
+ *     [addFirstNeighbors [useBestForAll]]]]]]]
+ * 
+ * When runLocal is true (the default), every task gets a thread in this JVM. Otherwise rounds are
+ * run on PlsWorker processes: the ones listed as host:port pairs in the comma-separated
+ * pls.workers system property, or else pls.localWorkers worker JVMs started on this machine.
+ * 
+ * The tasks start from the cheapest of pls.starts greedy solutions, numTasks by default, built
+ * with random weights on all cores.
+ */
+public class VrpPlsMain {
+  private static final Logger LOG = Logger.getLogger(VrpPlsMain.class);
+  
+  private static final int DEFAULT_ROUND_TIME = 60 * 1000;
+  
+  public static void main(String[] args) throws IOException, InterruptedException {
+    //required args
+    int numTasks = Integer.parseInt(args[0]);
+    int k = Math.max(1, numTasks-1);
+    int numRuns = Integer.parseInt(args[1]);
+    int extraNeighbors = 0;
+    int helperNeighbors = 0;
+    //optional args
+    boolean runLocal = true;
+    int roundTime = DEFAULT_ROUND_TIME;
+    File inputFile = new File("problems/rc110_1.txt");
+    boolean useBestForAll = true;
+    boolean addFirstNeighbors = true;
+    if (args.length > 2) {
+      roundTime = Integer.parseInt(args[2]);
+    }
+    if (args.length > 3) {
+      k = Integer.parseInt(args[3]);
+    }
+    if (args.length > 4) {
+      if (args[4].matches("(true|false)")) {
+        runLocal = Boolean.parseBoolean(args[4]);
+      } else {
+        inputFile = new File(args[4]);
+      }
+    }
+    if (args.length > 5) {
+      extraNeighbors = Integer.parseInt(args[5]);
+    }
+    if (args.length > 6) {
+      helperNeighbors = Integer.parseInt(args[6]);
+    }
+    if (args.length > 7) {
+      addFirstNeighbors = Boolean.parseBoolean(args[7]);
+    }
+    if (args.length > 8) {
+      useBestForAll = Boolean.parseBoolean(args[8]);
+    }
+        
+    final int maxDiscrepancies = 5;
+    final int relaxationRandomness = 15;
+    final int maxIter = 35;
+    final int maxEscalation = 35;
+    
+    VrpProblem problem = VrpReader.readSolomon(inputFile, Integer.MAX_VALUE); 
+    Random rand = new Random();
+    
+    List<VrpPlsSolution> initSols = new ArrayList<VrpPlsSolution>();
+    //create different initializations by varying weights on initializer
+    int numStarts = Math.max(numTasks, Integer.getInteger("pls.starts", numTasks));
+    List<VrpSolution> starts = VrpGreedyInitializer.bestOfRandomStarts(problem, numStarts, numTasks, rand, 
+        Runtime.getRuntime().availableProcessors());
+    double bestStartCost = starts.get(0).getToursCost();
+    for (int i = 0; i < numTasks; i++) {
+      VrpSolution sol = starts.get(i);
+      VrpPlsSolution plsSol = new VrpPlsSolution(sol, maxIter, maxEscalation, relaxationRandomness, 
+          maxDiscrepancies, i, -1);
+      plsSol.setCurEscalation(1);
+      initSols.add(plsSol);
+    }
+    
+    PlsMetadata metadata = new PlsMetadata(k, bestStartCost, roundTime, useBestForAll, extraNeighbors, 
+        helperNeighbors, addFirstNeighbors);
+    
+    //-Dpls.metrics=path/prefix publishes metrics as MBeans and dumps them to prefix.csv and prefix.json.
+    //Workers in other JVMs don't send their counters back, so it only applies to local runs
+    SearchMetrics metrics = null;
+    MetricsReporter reporter = null;
+    String metricsPrefix = System.getProperty("pls.metrics");
+    if (metricsPrefix != null && !runLocal) {
+      LOG.warn("Ignoring pls.metrics, which only works when runLocal is true");
+    } else if (metricsPrefix != null) {
+      metrics = new SearchMetrics();
+      metrics.registerMBeans(new File(metricsPrefix).getName());
+      reporter = new MetricsReporter(metrics, new File(metricsPrefix + ".csv"), new File(metricsPrefix + ".json"));
+      reporter.start(Long.getLong("pls.metrics.period", 10000));
+    }
+    
+    try {
+      VrpPlsSolution best;
+      long startTime;
+      if (runLocal) {
+        PlsMaster master = new PlsMaster(rand);
+        master.setMetrics(metrics);
+        startTime = System.currentTimeMillis();
+        best = master.run(numRuns, initSols, metadata);
+      } else {
+        SocketPlsMaster master = new SocketPlsMaster(rand, problem);
+        try {
+          String workers = System.getProperty("pls.workers");
+          if (workers != null) {
+            for (String hostPort : workers.split(",")) {
+              String[] parts = hostPort.trim().split(":");
+              master.addWorker(new InetSocketAddress(parts[0], Integer.parseInt(parts[1])));
+            }
+          } else {
+            int defaultWorkers = Math.min(numTasks, Runtime.getRuntime().availableProcessors());
+            master.addLocalWorkers(Integer.getInteger("pls.localWorkers", defaultWorkers));
+          }
+          startTime = System.currentTimeMillis();
+          best = master.run(numRuns, initSols, metadata);
+        } finally {
+          master.close();
+        }
+      }
+      long endTime = System.currentTimeMillis();
+      LOG.info("Best cost: " + best.getCost() + ", vehicles: " + best.getSolution().getNumVehicles());
+      LOG.info("Total time: " + (endTime - startTime));
+    } finally {
+      if (reporter != null) {
+        reporter.stop();
+      }
+    }
+  }
+}
@@ -16,10 +16,6 @@
 
 package pls.vrp;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.IOException;
-
 public class VrpPlsSolution {
   private int maxIter;
   private int maxEscalation;
@@ -115,46 +111,6 @@ public class VrpPlsSolution {
     return sol.getToursCost();
   }
   
-  private VrpProblem buildProblemFromStream(DataInput dis) throws IOException {
-    int numCities = dis.readShort();
-    int depotX = dis.readShort();
-    int depotY = dis.readShort();
-    int vehicleCapacity = dis.readShort();
-    int[] serviceTimes = new int[numCities];
-    int[] demands = new int[numCities];
-    int[] windowStartTimes = new int[numCities];
-    int[] windowEndTimes = new int[numCities];
-    int[] xCoors = new int[numCities];
-    int[] yCoors = new int[numCities];
-    for (int i = 0; i < numCities; i++) {
-      demands[i] = dis.readShort();
-      serviceTimes[i] = dis.readShort();
-      windowStartTimes[i] = dis.readShort();
-      windowEndTimes[i] = dis.readShort();
-      xCoors[i] = dis.readShort();
-      yCoors[i] = dis.readShort();
-    }
-    
-    return new VrpProblem(demands, xCoors, yCoors, serviceTimes, windowStartTimes, windowEndTimes,
-        depotX, depotY, vehicleCapacity);
-  }
-  
-  public void writeProblemToStream(VrpProblem problem, DataOutput dos) throws IOException {
-    dos.writeShort(problem.getDemands().length);
-    dos.writeShort(problem.getDepotX());
-    dos.writeShort(problem.getDepotY());
-    dos.writeShort(problem.getVehicleCapacity());
-    for (int i = 0; i < problem.getNumCities(); i++) {
-      dos.writeShort(problem.getDemands()[i]);
-      dos.writeShort(problem.getServiceTimes()[i]);
-      dos.writeShort(problem.getWindowStartTimes()[i]);
-      dos.writeShort(problem.getWindowEndTimes()[i]);
-      dos.writeShort(problem.getXCoors()[i]);
-      dos.writeShort(problem.getYCoors()[i]);
-    }
-  }
-  
-  
   public boolean equals(Object o) {
     VrpPlsSolution other = (VrpPlsSolution)o;
     VrpSolution otherSol = other.getSolution();
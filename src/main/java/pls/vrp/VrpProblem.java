@@ -22,7 +22,9 @@ public class VrpProblem {
   private int[] serviceTimes;
   private int[] windowStartTimes;
   private int[] windowEndTimes;
-  private double[][] cityDists;
+  private VrpDistances cityDists;
+  //only built if someone asks for the whole matrix
+  private volatile double[][] cityDistsMatrix;
   private double[] distsFromDepot;
   
   private int depotX;
@@ -32,8 +34,36 @@ public class VrpProblem {
   
   private double maxDist;
   
+  /** System property with the number of nearest neighbors kept for each customer. */
+  public static final String NUM_NEIGHBORS_PROPERTY = "vrp.neighbors";
+  public static final int DEFAULT_NUM_NEIGHBORS = 40;
+  //built on first use
+  private volatile int[][] neighbors;
+  
   public VrpProblem(int[] demands, int[] xCoors, int[] yCoors, int[] serviceTimes,
       int[] windowStartTimes, int[] windowEndTimes, int depotX, int depotY, int capacity) {
+    this(demands, xCoors, yCoors, serviceTimes, windowStartTimes, windowEndTimes, depotX, depotY, capacity,
+        VrpDistances.defaultMode(demands.length));
+  }
+  
+  /**
+   * @param distanceMode
+   *     how distances between customers are stored
+   */
+  public VrpProblem(int[] demands, int[] xCoors, int[] yCoors, int[] serviceTimes,
+      int[] windowStartTimes, int[] windowEndTimes, int depotX, int depotY, int capacity,
+      VrpDistances.Mode distanceMode) {
+    this(demands, xCoors, yCoors, serviceTimes, windowStartTimes, windowEndTimes, depotX, depotY, capacity,
+        VrpDistances.create(distanceMode, xCoors, yCoors));
+  }
+  
+  /**
+   * @param cityDists
+   *     distances between the given customers
+   */
+  public VrpProblem(int[] demands, int[] xCoors, int[] yCoors, int[] serviceTimes,
+      int[] windowStartTimes, int[] windowEndTimes, int depotX, int depotY, int capacity,
+      VrpDistances cityDists) {
     this.demands = demands;
     this.serviceTimes = serviceTimes;
     this.windowStartTimes = windowStartTimes;
@@ -44,26 +74,18 @@ public class VrpProblem {
     this.depotX = depotX;
     this.depotY = depotY;
     
+    this.cityDists = cityDists;
     buildDistsArrays();
   }
   
   private void buildDistsArrays() {
-    cityDists = new double[demands.length][demands.length];
     distsFromDepot = new double[demands.length];
     for (int i = 0; i < demands.length; i++) {
-      int xDiffFromDepot = xCoors[i] - depotX;
-      int yDiffFromDepot = yCoors[i] - depotY;
+      long xDiffFromDepot = xCoors[i] - depotX;
+      long yDiffFromDepot = yCoors[i] - depotY;
       distsFromDepot[i] = Math.sqrt(xDiffFromDepot * xDiffFromDepot + yDiffFromDepot * yDiffFromDepot);
-      
-      for (int j = 0; j < demands.length; j++) {
-        int xDiff = xCoors[i] - xCoors[j];
-        int yDiff = yCoors[i] - yCoors[j];
-        cityDists[i][j] = Math.sqrt(xDiff * xDiff + yDiff * yDiff);
-        if (cityDists[i][j] > maxDist) {
-          maxDist = cityDists[i][j];
-        }
-      }
     }
+    maxDist = cityDists.getMaxDistance();
   }
   
   public int getDepotX() {
@@ -90,12 +112,54 @@ public class VrpProblem {
     return distsFromDepot;
   }
   
+  /**
+   * The customers nearest to the given one, nearest first. There are DEFAULT_NUM_NEIGHBORS of
+   * them unless the vrp.neighbors system property says otherwise, or there are fewer customers.
+   */
+  public int[] getNeighbors(int custId) {
+    int[][] lists = neighbors;
+    if (lists == null) {
+      synchronized (this) {
+        lists = neighbors;
+        if (lists == null) {
+          lists = NeighborLists.build(xCoors, yCoors, 
+              Integer.getInteger(NUM_NEIGHBORS_PROPERTY, DEFAULT_NUM_NEIGHBORS));
+          neighbors = lists;
+        }
+      }
+    }
+    return lists[custId];
+  }
+  
   public int[] getServiceTimes() {
     return serviceTimes;
   }
   
+  /**
+   * The full distance matrix, which is built on the first call if the problem doesn't store
+   * one. Prefer getDistance, which works without it.
+   */
   public double[][] getDistances() {
-    return cityDists;
+    double[][] matrix = cityDistsMatrix;
+    if (matrix == null) {
+      synchronized (this) {
+        matrix = cityDistsMatrix;
+        if (matrix == null) {
+          matrix = new double[demands.length][demands.length];
+          for (int i = 0; i < demands.length; i++) {
+            for (int j = 0; j < demands.length; j++) {
+              matrix[i][j] = cityDists.get(i, j);
+            }
+          }
+          cityDistsMatrix = matrix;
+        }
+      }
+    }
+    return matrix;
+  }
+  
+  public VrpDistances.Mode getDistanceMode() {
+    return cityDists.getMode();
   }
   
   public int[] getWindowStartTimes() {
@@ -113,7 +177,7 @@ public class VrpProblem {
   //if id's are negative, they refer to the depot
   public double getDistance(int custId1, int custId2) {
     if (custId1 >= 0 && custId2 >= 0) {
-      return cityDists[custId1][custId2];
+      return cityDists.get(custId1, custId2);
     } else if (custId1 >= 0) {
       return distsFromDepot[custId1];
     } else if (custId2 >= 0){
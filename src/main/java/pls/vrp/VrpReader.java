@@ -14,61 +14,434 @@
  * limitations under the License.
  */
 
+
 package pls.vrp;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
- * Reads vehicle routing problems in the Solomon format from input files
+ * Reads vehicle routing problems from input files. Three formats are recognized from the start
+ * of the file:
+ * <ul>
+ * <li>SOLOMON: the capacity on the first line, then a row for the depot and a row for each
+ * customer, with the columns CUST NO., XCOORD., YCOORD., DEMAND, READY TIME, DUE DATE and
+ * SERVICE TIME.</li>
+ * <li>HOMBERGER: the layout of the original Solomon and the Gehring and Homberger instances,
+ * which is the same rows preceded by the instance name and VEHICLE and CUSTOMER sections.</li>
+ * <li>TSPLIB: the CVRPTW variant of TSPLIB, with keyword lines such as "CAPACITY : 200" and
+ * NODE_COORD, DEMAND, TIME_WINDOW, SERVICE_TIME and DEPOT sections.</li>
+ * </ul>
+ * Numbers are parsed straight from the bytes of the file and truncated to ints. Files written by
+ * VrpBinaryFormat are recognized by their magic number and mapped.
  */
 public class VrpReader {
+  
+  public enum Format {SOLOMON, HOMBERGER, TSPLIB}
+  
+  /** Files at least this large are memory mapped instead of streamed. */
+  public static final long MAP_THRESHOLD = 16 << 20;
+  
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int NUM_COLUMNS = 7;
+  
+  /**
+   * Reads the file in whichever format it's in.
+   */
   public static VrpProblem readSolomon(File f, int numCities) throws IOException {
-    BufferedReader br = new BufferedReader(new FileReader(f));
-    
-    String line = br.readLine();
-    int capacity = Integer.parseInt(line.trim());
-    line = br.readLine();
-    String[] tokens = line.trim().split("\\s+");
-    int depotX = (int)(Double.parseDouble(tokens[1]));
-    int depotY = (int)(Double.parseDouble(tokens[2]));
-    
-    List<String> lines = new ArrayList<String>();
-    for (int i = 0; i < numCities && (line = br.readLine()) != null; i++) {
-      lines.add(line);
-    }
-    
-    numCities = lines.size();
-    int[] xCoors = new int[numCities];
-    int[] yCoors = new int[numCities];
-    int[] demands = new int[numCities];
-    int[] windowStarts = new int[numCities];
-    int[] windowEnds = new int[numCities];
-    int[] serviceTimes = new int[numCities];
-
-    for (int i = 0; i < numCities; i++) {
-      tokens = lines.get(i).trim().split("\\s+");
+    return read(f, numCities, f.length() >= MAP_THRESHOLD);
+  }
+  
+  /**
+   * @param numCities
+   *     the maximum number of customers to read
+   * @param map
+   *     whether to memory map the file rather than stream it through a buffer
+   */
+  public static VrpProblem read(File f, int numCities, boolean map) throws IOException {
+    if (VrpBinaryFormat.isBinary(f)) {
+      return readBinary(f, numCities);
+    }
+    FileInputStream in = new FileInputStream(f);
+    try {
+      FileChannel channel = in.getChannel();
+      Scanner scanner;
+      if (map) {
+        scanner = new Scanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), null);
+      } else {
+        scanner = new Scanner(ByteBuffer.allocate(BUFFER_SIZE), channel);
+      }
+      return read(scanner, numCities, f.getName());
+    } finally {
+      in.close();
+    }
+  }
+  
+  private static VrpProblem readBinary(File f, int numCities) throws IOException {
+    VrpProblem problem = VrpBinaryFormat.read(f);
+    if (numCities >= problem.getNumCities()) {
+      return problem;
+    }
+    return new VrpProblem(Arrays.copyOf(problem.getDemands(), numCities), 
+        Arrays.copyOf(problem.getXCoors(), numCities), Arrays.copyOf(problem.getYCoors(), numCities), 
+        Arrays.copyOf(problem.getServiceTimes(), numCities), Arrays.copyOf(problem.getWindowStartTimes(), numCities),
+        Arrays.copyOf(problem.getWindowEndTimes(), numCities), problem.getDepotX(), problem.getDepotY(), 
+        problem.getVehicleCapacity());
+  }
+  
+  private static VrpProblem read(Scanner scanner, int numCities, String name) throws IOException {
+    if (scanner.atNumber()) {
+      int capacity = scanner.nextInt();
+      return readRows(scanner, capacity, numCities, name);
+    }
+    String first = scanner.nextWord();
+    if (first == null) {
+      throw new IOException(name + " is empty");
+    }
+    if (first.indexOf(':') >= 0 || scanner.peekOnLine() == ':') {
+      return readTsplib(scanner, first, numCities, name);
+    }
+    
+    //the name is followed by VEHICLE, NUMBER CAPACITY and the values of those
+    skipPast(scanner, "CAPACITY", name);
+    scanner.nextInt();
+    int capacity = scanner.nextInt();
+    //then CUSTOMER and the column headings
+    skipPast(scanner, "CUSTOMER", name);
+    while (!scanner.atNumber()) {
+      if (scanner.nextWord() == null) {
+        throw new IOException(name + " has no customers");
+      }
+    }
+    return readRows(scanner, capacity, numCities, name);
+  }
+  
+  private static void skipPast(Scanner scanner, String keyword, String name) throws IOException {
+    String word;
+    while ((word = scanner.nextWord()) != null) {
+      if (word.equalsIgnoreCase(keyword)) {
+        return;
+      }
+    }
+    throw new IOException(name + " is missing " + keyword);
+  }
+  
+  /**
+   * Reads the depot row and then customer rows until the end of the file or numCities.
+   */
+  private static VrpProblem readRows(Scanner scanner, int capacity, int numCities, String name) 
+      throws IOException {
+    int[] depot = new int[NUM_COLUMNS];
+    readRow(scanner, depot, 0, name);
+    
+    int[] rows = new int[NUM_COLUMNS * 128];
+    int n = 0;
+    while (n < numCities && scanner.atNumber()) {
+      if ((n + 1) * NUM_COLUMNS > rows.length) {
+        int[] newRows = new int[rows.length * 2];
+        System.arraycopy(rows, 0, newRows, 0, n * NUM_COLUMNS);
+        rows = newRows;
+      }
+      readRow(scanner, rows, n * NUM_COLUMNS, name);
+      n++;
+    }
+    
+    int[] xCoors = new int[n];
+    int[] yCoors = new int[n];
+    int[] demands = new int[n];
+    int[] windowStarts = new int[n];
+    int[] windowEnds = new int[n];
+    int[] serviceTimes = new int[n];
+    for (int i = 0; i < n; i++) {
       //CUST NO.   XCOORD.   YCOORD.    DEMAND   READY TIME   DUE DATE   SERVICE TIME
-      int x = (int)(Double.parseDouble(tokens[1]));
-      xCoors[i] = (x);
-      int y = (int)(Double.parseDouble(tokens[2]));
-      yCoors[i] = (y);
-      int demand = (int)(Double.parseDouble(tokens[3]));
-      demands[i] = (demand);
-      int windowStart = (int)(Double.parseDouble(tokens[4]));
-      windowStarts[i] = (windowStart);
-      int windowEnd = (int)(Double.parseDouble(tokens[5]));
-      windowEnds[i] = (windowEnd);
-      int serviceTime = (int)(Double.parseDouble(tokens[6]));
-      serviceTimes[i] = (serviceTime);
-    }
-    
-    VrpProblem problem = new VrpProblem(demands, xCoors, yCoors, serviceTimes, 
-        windowStarts, windowEnds, depotX, depotY, capacity);
-    return problem;
+      int offset = i * NUM_COLUMNS;
+      xCoors[i] = rows[offset + 1];
+      yCoors[i] = rows[offset + 2];
+      demands[i] = rows[offset + 3];
+      windowStarts[i] = rows[offset + 4];
+      windowEnds[i] = rows[offset + 5];
+      serviceTimes[i] = rows[offset + 6];
+    }
+    
+    return new VrpProblem(demands, xCoors, yCoors, serviceTimes, 
+        windowStarts, windowEnds, depot[1], depot[2], capacity);
+  }
+  
+  private static void readRow(Scanner scanner, int[] row, int offset, String name) throws IOException {
+    for (int i = 0; i < NUM_COLUMNS; i++) {
+      if (!scanner.atNumber()) {
+        throw new IOException(name + " has a short row");
+      }
+      row[offset + i] = scanner.nextInt();
+    }
+  }
+  
+  /**
+   * Node ids are expected to run from 1 to DIMENSION. Every node but the depot is a customer.
+   */
+  private static VrpProblem readTsplib(Scanner scanner, String firstWord, int numCities, String name)
+      throws IOException {
+    int dimension = -1;
+    int capacity = -1;
+    int depotId = 1;
+    int[] xCoors = null;
+    int[] yCoors = null;
+    int[] demands = null;
+    int[] windowStarts = null;
+    int[] windowEnds = null;
+    int[] serviceTimes = null;
+    
+    String word = firstWord;
+    while (word != null && !word.equals("EOF")) {
+      int colon = word.indexOf(':');
+      String keyword = (colon >= 0) ? word.substring(0, colon) : word;
+      if (keyword.endsWith("_SECTION")) {
+        if (dimension < 0) {
+          throw new IOException(name + " has a section before its DIMENSION");
+        }
+        if (keyword.equals("NODE_COORD_SECTION")) {
+          xCoors = new int[dimension];
+          yCoors = new int[dimension];
+          readSection(scanner, dimension, xCoors, yCoors, name);
+        } else if (keyword.equals("DEMAND_SECTION")) {
+          demands = new int[dimension];
+          readSection(scanner, dimension, demands, null, name);
+        } else if (keyword.equals("TIME_WINDOW_SECTION")) {
+          windowStarts = new int[dimension];
+          windowEnds = new int[dimension];
+          readSection(scanner, dimension, windowStarts, windowEnds, name);
+        } else if (keyword.equals("SERVICE_TIME_SECTION")) {
+          serviceTimes = new int[dimension];
+          readSection(scanner, dimension, serviceTimes, null, name);
+        } else if (keyword.equals("DEPOT_SECTION")) {
+          depotId = scanner.nextInt();
+          //the list of depots is terminated by -1
+          while (scanner.atNumber() && scanner.nextInt() != -1) {
+          }
+        } else {
+          throw new IOException(name + " has unsupported section " + keyword);
+        }
+      } else {
+        //"KEYWORD : value", where the value runs to the end of the line
+        if (colon < 0 || colon == word.length() - 1) {
+          scanner.skipColon();
+        }
+        String value = (colon >= 0 && colon < word.length() - 1) 
+            ? word.substring(colon + 1) + scanner.restOfLine() : scanner.restOfLine();
+        value = value.trim();
+        if (keyword.equals("DIMENSION")) {
+          dimension = Integer.parseInt(value);
+        } else if (keyword.equals("CAPACITY")) {
+          capacity = Integer.parseInt(value);
+        } else if (keyword.equals("TYPE") && !value.startsWith("CVRP")) {
+          throw new IOException(name + " has unsupported type " + value);
+        }
+      }
+      word = scanner.nextWord();
+    }
+    
+    if (capacity < 0 || xCoors == null || demands == null || windowStarts == null) {
+      throw new IOException(name + " is missing CAPACITY, coordinates, demands or time windows");
+    }
+    if (serviceTimes == null) {
+      serviceTimes = new int[dimension];
+    }
+    
+    int depotIndex = depotId - 1;
+    int n = Math.min(dimension - 1, numCities);
+    int[] custXs = new int[n];
+    int[] custYs = new int[n];
+    int[] custDemands = new int[n];
+    int[] custWindowStarts = new int[n];
+    int[] custWindowEnds = new int[n];
+    int[] custServiceTimes = new int[n];
+    int custId = 0;
+    for (int i = 0; i < dimension && custId < n; i++) {
+      if (i == depotIndex) {
+        continue;
+      }
+      custXs[custId] = xCoors[i];
+      custYs[custId] = yCoors[i];
+      custDemands[custId] = demands[i];
+      custWindowStarts[custId] = windowStarts[i];
+      custWindowEnds[custId] = windowEnds[i];
+      custServiceTimes[custId] = serviceTimes[i];
+      custId++;
+    }
+    
+    return new VrpProblem(custDemands, custXs, custYs, custServiceTimes, custWindowStarts, custWindowEnds,
+        xCoors[depotIndex], yCoors[depotIndex], capacity);
+  }
+  
+  /**
+   * Reads rows of a node id followed by one or two values.
+   */
+  private static void readSection(Scanner scanner, int dimension, int[] values1, int[] values2, String name)
+      throws IOException {
+    while (scanner.atNumber()) {
+      int index = scanner.nextInt() - 1;
+      if (index < 0 || index >= dimension) {
+        throw new IOException(name + " has node id " + (index + 1) + " outside of its DIMENSION");
+      }
+      values1[index] = scanner.nextInt();
+      if (values2 != null) {
+        values2[index] = scanner.nextInt();
+      }
+    }
+  }
+  
+  /**
+   * Reads a byte at a time from either a mapped buffer or a buffer that's refilled from a channel,
+   * so that tokens may span refills.
+   */
+  private static class Scanner {
+    private final ByteBuffer buffer;
+    //null if the buffer holds the whole file
+    private final FileChannel channel;
+    private int pos;
+    private int limit;
+    
+    public Scanner(ByteBuffer buffer, FileChannel channel) {
+      this.buffer = buffer;
+      this.channel = channel;
+      this.limit = (channel == null) ? buffer.limit() : 0;
+    }
+    
+    /**
+     * @return
+     *     the next byte without consuming it, or -1 at the end of the file
+     */
+    private int peek() throws IOException {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      return buffer.get(pos);
+    }
+    
+    private boolean fill() throws IOException {
+      if (channel == null) {
+        return false;
+      }
+      buffer.clear();
+      int read;
+      do {
+        read = channel.read(buffer);
+      } while (read == 0);
+      pos = 0;
+      limit = Math.max(read, 0);
+      return read > 0;
+    }
+    
+    private static boolean isSpace(int c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+    
+    private void skipSpace() throws IOException {
+      int c;
+      while ((c = peek()) >= 0 && isSpace(c)) {
+        pos++;
+      }
+    }
+    
+    /**
+     * Skips whitespace and checks whether a number comes next.
+     */
+    public boolean atNumber() throws IOException {
+      skipSpace();
+      int c = peek();
+      return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+    
+    /**
+     * @return
+     *     the next character on this line that's not whitespace, without consuming it, or -1 if
+     *     there's none
+     */
+    public int peekOnLine() throws IOException {
+      int c;
+      while ((c = peek()) == ' ' || c == '\t') {
+        pos++;
+      }
+      return (c == '\n' || c == '\r') ? -1 : c;
+    }
+    
+    public void skipColon() throws IOException {
+      if (peekOnLine() == ':') {
+        pos++;
+      }
+    }
+    
+    /**
+     * @return
+     *     the next whitespace-delimited token, or null at the end of the file
+     */
+    public String nextWord() throws IOException {
+      skipSpace();
+      if (peek() < 0) {
+        return null;
+      }
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = peek()) >= 0 && !isSpace(c)) {
+        sb.append((char)c);
+        pos++;
+      }
+      return sb.toString();
+    }
+    
+    public String restOfLine() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = peek()) >= 0 && c != '\n' && c != '\r') {
+        sb.append((char)c);
+        pos++;
+      }
+      return sb.toString();
+    }
+    
+    /**
+     * Parses the next number, truncating any fraction the way a cast from double would.
+     */
+    public int nextInt() throws IOException {
+      skipSpace();
+      boolean negative = false;
+      int c = peek();
+      if (c == '-' || c == '+') {
+        negative = (c == '-');
+        pos++;
+      }
+      long intPart = 0;
+      boolean sawDigit = false;
+      while ((c = peek()) >= '0' && c <= '9') {
+        intPart = intPart * 10 + (c - '0');
+        sawDigit = true;
+        pos++;
+      }
+      double fraction = 0;
+      if (c == '.') {
+        pos++;
+        double scale = .1;
+        while ((c = peek()) >= '0' && c <= '9') {
+          fraction += (c - '0') * scale;
+          scale /= 10;
+          sawDigit = true;
+          pos++;
+        }
+      }
+      if (!sawDigit) {
+        throw new IOException("Expected a number but found '" + (char)c + "'");
+      }
+      if (c == 'e' || c == 'E') {
+        pos++;
+        int exponent = nextInt();
+        double value = (intPart + fraction) * Math.pow(10, exponent);
+        return (int)(negative ? -value : value);
+      }
+      return (int)(negative ? -intPart : intPart);
+    }
   }
 }
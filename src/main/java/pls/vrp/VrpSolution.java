@@ -16,24 +16,36 @@
 
 package pls.vrp;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  * Represents a solution or partial solution to the vehicle routing problem.
+ * 
+ * Routes are stored as one giant tour of customer ids, with the offset at which each route starts.
+ * Predecessor, successor, route and position lookups are built on first use, and the List views
+ * of the routes and the unrouted customers are adapters over the arrays. Solutions are immutable
+ * and safe to share between threads.
  */
 public class VrpSolution {
-  //values of -1 point to the depot
-  private List<List<Integer>> routes;
-  private List<Integer> unrouted;
-  private int numVehicles;
-  private VrpProblem problem;
-  private double toursCost = -1;
+  //customers of all the routes, one after another
+  private final int[] tour;
+  //route r is tour[routeStarts[r]] to tour[routeStarts[r + 1] - 1]
+  private final int[] routeStarts;
+  private final int[] unrouted;
+  private final VrpProblem problem;
+  private volatile double toursCost = -1;
+  //cost of each route, calculated when first needed if not given
+  private volatile double[] routeCosts;
+  
+  private volatile List<List<Integer>> routesView;
+  private volatile List<Integer> unroutedView;
+  private volatile Index index;
   
   public VrpSolution(List<List<Integer>> routes, VrpProblem problem) {
-    this.routes = routes;
-    this.problem = problem;
-    this.numVehicles = routes.size();
+    this(routes, null, problem);
   }
   
   public VrpSolution(List<List<Integer>> routes, VrpProblem problem, double toursCost) {
@@ -42,46 +54,342 @@ public class VrpSolution {
   }
   
   public VrpSolution(List<List<Integer>> routes, List<Integer> unroutedNodes, VrpProblem problem) {
-    this(routes, problem);
-    this.unrouted = unroutedNodes;
+    this.problem = problem;
+    int numRouted = 0;
+    for (List<Integer> route : routes) {
+      numRouted += route.size();
+    }
+    this.tour = new int[numRouted];
+    this.routeStarts = new int[routes.size() + 1];
+    int pos = 0;
+    for (int r = 0; r < routes.size(); r++) {
+      routeStarts[r] = pos;
+      for (int custId : routes.get(r)) {
+        tour[pos++] = custId;
+      }
+    }
+    routeStarts[routes.size()] = pos;
+    if (unroutedNodes == null) {
+      this.unrouted = null;
+    } else {
+      this.unrouted = new int[unroutedNodes.size()];
+      for (int i = 0; i < unrouted.length; i++) {
+        unrouted[i] = unroutedNodes.get(i);
+      }
+    }
   }
   
-  private double calcToursCost(List<List<Integer>> routes, VrpProblem problem) {
-    double[][] distances = problem.getDistances();
-    double[] distancesFromDepot = problem.getDistancesFromDepot();
-    
-    double toursCost = 0;
-    for (List<Integer> route : routes) {
-      Iterator<Integer> iter = route.iterator();
-      if (!iter.hasNext()) {
-        continue;
+  /**
+   * Takes ownership of the given arrays, which must not be modified afterwards.
+   * 
+   * @param routeStarts
+   *     the offset of each route in the tour, followed by the length of the tour
+   * @param unrouted
+   *     may be null for a complete solution
+   * @param toursCost
+   *     the cost of the routes, or a negative number to calculate it when it's needed
+   */
+  public VrpSolution(int[] tour, int[] routeStarts, int[] unrouted, VrpProblem problem, double toursCost) {
+    this.tour = tour;
+    this.routeStarts = routeStarts;
+    this.unrouted = unrouted;
+    this.problem = problem;
+    this.toursCost = toursCost;
+  }
+  
+  /**
+   * Takes ownership of the given arrays, which must not be modified afterwards.
+   * 
+   * @param routeCosts
+   *     the cost of each route, which the tours cost is the sum of
+   */
+  public VrpSolution(int[] tour, int[] routeStarts, int[] unrouted, VrpProblem problem, double[] routeCosts) {
+    this(tour, routeStarts, unrouted, problem, sum(routeCosts));
+    this.routeCosts = routeCosts;
+  }
+  
+  /**
+   * @return
+   *     a partial solution with the same routes minus the given customers, which are its
+   *     unrouted customers. Takes ownership of the array.
+   */
+  public VrpSolution removeCustomers(int[] custIds) {
+    boolean[] removedMarks = new boolean[problem.getNumCities()];
+    for (int custId : custIds) {
+      removedMarks[custId] = true;
+    }
+    double[] oldRouteCosts = getRouteCosts();
+    int[] newTour = new int[tour.length - custIds.length];
+    int[] newRouteStarts = new int[routeStarts.length];
+    double[] newRouteCosts = new double[getNumRoutes()];
+    int pos = 0;
+    for (int r = 0; r < getNumRoutes(); r++) {
+      newRouteStarts[r] = pos;
+      for (int i = routeStarts[r]; i < routeStarts[r + 1]; i++) {
+        if (!removedMarks[tour[i]]) {
+          newTour[pos++] = tour[i];
+        }
       }
-      int prev = iter.next();
-      toursCost += distancesFromDepot[prev];
-      while (iter.hasNext()) {
-        int cur = iter.next();
-        toursCost += distances[prev][cur];
-        prev = cur;
+      //only the routes that lost customers need their costs recalculated
+      if (pos - newRouteStarts[r] == getRouteLength(r)) {
+        newRouteCosts[r] = oldRouteCosts[r];
+      } else {
+        newRouteCosts[r] = calcRouteCost(newTour, newRouteStarts[r], pos);
       }
-      toursCost += distancesFromDepot[prev];
+    }
+    newRouteStarts[getNumRoutes()] = pos;
+    return new VrpSolution(newTour, newRouteStarts, custIds, problem, newRouteCosts);
+  }
+  
+  /**
+   * Walks every route, ignoring any costs that were given.
+   */
+  public double calcToursCost() {
+    double toursCost = 0;
+    for (int r = 0; r < getNumRoutes(); r++) {
+      toursCost += calcRouteCost(tour, routeStarts[r], routeStarts[r + 1]);
     }
     return toursCost;
   }
   
+  private double calcRouteCost(int[] tour, int start, int end) {
+    if (start == end) {
+      return 0;
+    }
+    double routeCost = 0;
+    int prev = -1;
+    for (int i = start; i < end; i++) {
+      routeCost += problem.getDistance(prev, tour[i]);
+      prev = tour[i];
+    }
+    return routeCost + problem.getDistance(prev, -1);
+  }
+  
+  private static double sum(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+  
+  public double getRouteCost(int route) {
+    return getRouteCosts()[route];
+  }
+  
+  private double[] getRouteCosts() {
+    double[] costs = routeCosts;
+    if (costs == null) {
+      costs = new double[getNumRoutes()];
+      for (int r = 0; r < costs.length; r++) {
+        costs[r] = calcRouteCost(tour, routeStarts[r], routeStarts[r + 1]);
+      }
+      routeCosts = costs;
+    }
+    return costs;
+  }
+  
   public VrpProblem getProblem() {
     return problem;
   }
   
+  /**
+   * An unmodifiable view of the routes.
+   */
   public List<List<Integer>> getRoutes() {
-    return routes;
+    List<List<Integer>> view = routesView;
+    if (view == null) {
+      view = new RoutesView();
+      routesView = view;
+    }
+    return view;
   }
   
+  /**
+   * An unmodifiable view of the customers that aren't in any route, or null if it's not a
+   * partial solution.
+   */
   public List<Integer> getUninsertedNodes() {
-    return unrouted;
+    if (unrouted == null) {
+      return null;
+    }
+    List<Integer> view = unroutedView;
+    if (view == null) {
+      view = new IntListView(unrouted, 0, unrouted.length);
+      unroutedView = view;
+    }
+    return view;
   }
   
   public int getNumVehicles() {
-    return numVehicles;
+    return getNumRoutes();
+  }
+  
+  public int getNumRoutes() {
+    return routeStarts.length - 1;
+  }
+  
+  public int getRouteLength(int route) {
+    return routeStarts[route + 1] - routeStarts[route];
+  }
+  
+  public int getCustomer(int route, int position) {
+    return tour[routeStarts[route] + position];
+  }
+  
+  /**
+   * The customers of all the routes, one after another. Must not be modified.
+   */
+  public int[] getTour() {
+    return tour;
+  }
+  
+  /**
+   * The offset of each route in the tour, followed by the length of the tour. Must not be modified.
+   */
+  public int[] getRouteStarts() {
+    return routeStarts;
+  }
+  
+  /**
+   * The customers that aren't in any route, or null if it's not a partial solution. Must not be
+   * modified.
+   */
+  public int[] getUnrouted() {
+    return unrouted;
+  }
+  
+  /**
+   * @return
+   *     the customer before the given one in its route, or -1 if it's first or unrouted
+   */
+  public int getPredecessor(int custId) {
+    return getIndex().preds[custId];
+  }
+  
+  /**
+   * @return
+   *     the customer after the given one in its route, or -1 if it's last or unrouted
+   */
+  public int getSuccessor(int custId) {
+    return getIndex().succs[custId];
+  }
+  
+  /**
+   * @return
+   *     the route the given customer is in, or -1 if it's unrouted
+   */
+  public int getRouteOf(int custId) {
+    return getIndex().routeOf[custId];
+  }
+  
+  /**
+   * @return
+   *     the position of the given customer in its route, or -1 if it's unrouted
+   */
+  public int getPositionInRoute(int custId) {
+    return getIndex().positions[custId];
+  }
+  
+  /**
+   * The route of every customer, by customer id, -1 for unrouted ones. Must not be modified.
+   */
+  public int[] getCustomerRoutes() {
+    return getIndex().routeOf;
+  }
+  
+  private Index getIndex() {
+    Index idx = index;
+    if (idx == null) {
+      idx = new Index();
+      index = idx;
+    }
+    return idx;
+  }
+  
+  /**
+   * Lookups by customer id. Built all at once and published through a volatile, so a thread
+   * never sees a partly filled one.
+   */
+  private class Index {
+    public final int[] preds;
+    public final int[] succs;
+    public final int[] routeOf;
+    public final int[] positions;
+    
+    public Index() {
+      int numCities = problem.getNumCities();
+      preds = new int[numCities];
+      succs = new int[numCities];
+      routeOf = new int[numCities];
+      positions = new int[numCities];
+      Arrays.fill(preds, -1);
+      Arrays.fill(succs, -1);
+      Arrays.fill(routeOf, -1);
+      Arrays.fill(positions, -1);
+      for (int r = 0; r < getNumRoutes(); r++) {
+        int start = routeStarts[r];
+        int end = routeStarts[r + 1];
+        for (int i = start; i < end; i++) {
+          int custId = tour[i];
+          routeOf[custId] = r;
+          positions[custId] = i - start;
+          if (i > start) {
+            preds[custId] = tour[i - 1];
+          }
+          if (i < end - 1) {
+            succs[custId] = tour[i + 1];
+          }
+        }
+      }
+    }
+  }
+  
+  private class RoutesView extends AbstractList<List<Integer>> {
+    private final List<Integer>[] routeViews;
+    
+    @SuppressWarnings("unchecked")
+    public RoutesView() {
+      routeViews = (List<Integer>[])new List<?>[getNumRoutes()];
+      for (int r = 0; r < routeViews.length; r++) {
+        routeViews[r] = new IntListView(tour, routeStarts[r], routeStarts[r + 1]);
+      }
+    }
+    
+    @Override
+    public List<Integer> get(int index) {
+      return routeViews[index];
+    }
+    
+    @Override
+    public int size() {
+      return routeViews.length;
+    }
+  }
+  
+  private static class IntListView extends AbstractList<Integer> {
+    private final int[] values;
+    private final int start;
+    private final int end;
+    
+    public IntListView(int[] values, int start, int end) {
+      this.values = values;
+      this.start = start;
+      this.end = end;
+    }
+    
+    @Override
+    public Integer get(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+      }
+      return values[start + index];
+    }
+    
+    @Override
+    public int size() {
+      return end - start;
+    }
   }
   
   /**
@@ -89,7 +397,6 @@ public class VrpSolution {
    * and that the reported values for the objective function are correct.
    */
   public boolean verify(VrpProblem problem) {
-    double[][] distances = problem.getDistances();
     double[] distancesFromDepot = problem.getDistancesFromDepot();
     
 //    int toursCost = calcToursCost(routes, problem);
@@ -101,7 +408,7 @@ public class VrpSolution {
     boolean[] visited = new boolean[problem.getNumCities()];
     
     //follow the paths and make sure that the time constraints hold
-    for (List<Integer> route : routes) {
+    for (List<Integer> route : getRoutes()) {
       Iterator<Integer> iter = route.iterator();
       if (route.isEmpty()) {
         System.out.println("EMPTY ROUTE!!!");
@@ -120,9 +427,9 @@ public class VrpSolution {
       while (iter.hasNext()) {
         int cur = iter.next();
         visited[cur] = true;
-        double nextMinVisitTime = Math.max(minVisitTime + serviceTimes[prev] + distances[prev][cur], windowStartTimes[cur]);
+        double nextMinVisitTime = Math.max(minVisitTime + serviceTimes[prev] + problem.getDistance(prev, cur), windowStartTimes[cur]);
         if (nextMinVisitTime > windowEndTimes[cur]) {
-          System.out.println(minVisitTime + "\t" + serviceTimes[prev] + "\t" + distances[prev][cur]);
+          System.out.println(minVisitTime + "\t" + serviceTimes[prev] + "\t" + problem.getDistance(prev, cur));
           System.out.println("violated time constraint for " + prev + "->" + cur + 
               ": endTime=" + windowEndTimes[cur] + ", visitTime=" + nextMinVisitTime);
           return false;
@@ -157,7 +464,7 @@ public class VrpSolution {
     if (toursCost >= 0) {
       return toursCost;
     } else {
-      return toursCost = calcToursCost(routes, problem);
+      return toursCost = sum(getRouteCosts());
     }
   }
 }
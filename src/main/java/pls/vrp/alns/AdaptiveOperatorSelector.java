@@ -0,0 +1,156 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import pls.vrp.LnsRelaxer;
+
+/**
+ * Chooses among removal operators by roulette wheel, adapting their weights online to how much
+ * improvement each one has recently bought per millisecond of search.
+ * 
+ * Each operator's score is an exponential moving average of the improvement per millisecond of
+ * its attempts, and its weight is proportional to a floor plus its score relative to the best
+ * one's, so no operator is ever starved completely. Not thread safe.
+ */
+public class AdaptiveOperatorSelector {
+  
+  public static final double DEFAULT_REACTION_FACTOR = 0.1;
+  public static final double DEFAULT_MIN_WEIGHT = 0.1;
+  public static final int DEFAULT_MAX_STRING_LENGTH = 10;
+  
+  private final List<RemovalOperator> operators;
+  private final Random rand;
+  private final double reactionFactor;
+  private final double minWeight;
+  
+  private final double[] scores;
+  private final double[] weights;
+  private final List<OperatorStats> stats;
+  
+  public AdaptiveOperatorSelector(List<RemovalOperator> operators, Random rand) {
+    this(operators, rand, DEFAULT_REACTION_FACTOR, DEFAULT_MIN_WEIGHT);
+  }
+  
+  /**
+   * @param reactionFactor
+   *     how much of an operator's score comes from its latest attempt, between 0 and 1
+   * @param minWeight
+   *     weight of an operator with no score, relative to the one with the best score
+   */
+  public AdaptiveOperatorSelector(List<RemovalOperator> operators, Random rand, double reactionFactor, 
+      double minWeight) {
+    if (operators.isEmpty()) {
+      throw new IllegalArgumentException("No removal operators given");
+    }
+    this.operators = new ArrayList<RemovalOperator>(operators);
+    this.rand = rand;
+    this.reactionFactor = reactionFactor;
+    this.minWeight = minWeight;
+    this.scores = new double[operators.size()];
+    this.weights = new double[operators.size()];
+    List<OperatorStats> stats = new ArrayList<OperatorStats>(operators.size());
+    for (RemovalOperator operator : operators) {
+      stats.add(new OperatorStats(operator.getName()));
+    }
+    this.stats = Collections.unmodifiableList(stats);
+    updateWeights();
+  }
+  
+  /**
+   * Shaw, random, worst-cost, route, time window and string removal.
+   * 
+   * @param relaxer
+   *     used for Shaw removal
+   */
+  public static AdaptiveOperatorSelector createDefault(LnsRelaxer relaxer, int randomnessMeasure, Random rand) {
+    List<RemovalOperator> operators = new ArrayList<RemovalOperator>();
+    operators.add(new ShawRemoval(relaxer));
+    operators.add(new RandomRemoval(rand));
+    operators.add(new WorstCostRemoval(randomnessMeasure, rand));
+    operators.add(new RouteRemoval(rand));
+    operators.add(new TimeWindowRemoval(randomnessMeasure, rand));
+    operators.add(new StringRemoval(DEFAULT_MAX_STRING_LENGTH, rand));
+    return new AdaptiveOperatorSelector(operators, rand);
+  }
+  
+  /**
+   * @return
+   *     the index of the operator to use next
+   */
+  public int choose() {
+    double r = rand.nextDouble();
+    for (int i = 0; i < weights.length - 1; i++) {
+      r -= weights[i];
+      if (r < 0) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+  
+  public RemovalOperator getOperator(int index) {
+    return operators.get(index);
+  }
+  
+  public int getNumOperators() {
+    return operators.size();
+  }
+  
+  /**
+   * Reports the outcome of searching from the given operator's removal.
+   * 
+   * @param improvement
+   *     how much cheaper the new solution is, or 0 if the search found none
+   * @param solveNanos
+   *     time spent in the search
+   */
+  public void report(int index, double improvement, long solveNanos) {
+    stats.get(index).report(improvement, solveNanos);
+    double solveMillis = Math.max(solveNanos / 1000000.0, .001);
+    scores[index] = (1 - reactionFactor) * scores[index] + reactionFactor * (improvement / solveMillis);
+    updateWeights();
+  }
+  
+  private void updateWeights() {
+    double maxScore = 0;
+    for (double score : scores) {
+      maxScore = Math.max(maxScore, score);
+    }
+    double total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = minWeight + (maxScore > 0 ? scores[i] / maxScore : 1);
+      total += weights[i];
+    }
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] /= total;
+      stats.get(i).setWeight(weights[i]);
+    }
+  }
+  
+  /**
+   * Per operator counters, in the same order as the operators.
+   */
+  public List<OperatorStats> getStats() {
+    return stats;
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+/**
+ * Counters for one removal operator in an AdaptiveOperatorSelector.
+ */
+public class OperatorStats {
+  private final String name;
+  private int numAttempts;
+  private int numSuccesses;
+  private long solveNanos;
+  private double totalImprovement;
+  private double weight;
+  
+  public OperatorStats(String name) {
+    this.name = name;
+  }
+  
+  void report(double improvement, long solveNanos) {
+    numAttempts++;
+    if (improvement > 0) {
+      numSuccesses++;
+      totalImprovement += improvement;
+    }
+    this.solveNanos += solveNanos;
+  }
+  
+  void setWeight(double weight) {
+    this.weight = weight;
+  }
+  
+  public String getName() {
+    return name;
+  }
+  
+  /**
+   * Number of times the operator was chosen.
+   */
+  public int getNumAttempts() {
+    return numAttempts;
+  }
+  
+  /**
+   * Number of times the search found an improved solution after the operator's removal.
+   */
+  public int getNumSuccesses() {
+    return numSuccesses;
+  }
+  
+  /**
+   * Total time spent in the search after the operator's removals.
+   */
+  public long getSolveMillis() {
+    return solveNanos / 1000000;
+  }
+  
+  public double getTotalImprovement() {
+    return totalImprovement;
+  }
+  
+  /**
+   * Probability of the operator being chosen next.
+   */
+  public double getWeight() {
+    return weight;
+  }
+  
+  @Override
+  public String toString() {
+    return name + ": weight=" + String.format("%.3f", weight) + ", attempts=" + numAttempts 
+        + ", successes=" + numSuccesses + ", solveMs=" + getSolveMillis() 
+        + ", improvement=" + String.format("%.2f", totalImprovement);
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pls.vrp.VrpSolution;
+
+/**
+ * Removes customers chosen uniformly at random.
+ */
+public class RandomRemoval extends RemovalOperator {
+  private final Random rand;
+  
+  public RandomRemoval(Random rand) {
+    super("random");
+    this.rand = rand;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    int numCities = sol.getProblem().getNumCities();
+    numToRelax = Math.min(numToRelax, numCities);
+    //partial Fisher-Yates shuffle
+    int[] custIds = new int[numCities];
+    for (int i = 0; i < numCities; i++) {
+      custIds[i] = i;
+    }
+    List<Integer> removed = new ArrayList<Integer>(numToRelax);
+    for (int i = 0; i < numToRelax; i++) {
+      int j = i + rand.nextInt(numCities - i);
+      int custId = custIds[j];
+      custIds[j] = custIds[i];
+      custIds[i] = custId;
+      removed.add(custId);
+    }
+    return buildRelaxed(sol, removed);
+  }
+}
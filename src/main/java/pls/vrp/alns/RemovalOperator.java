@@ -0,0 +1,72 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.List;
+
+import pls.vrp.VrpSolution;
+
+/**
+ * Chooses customers to take out of a solution, for the search to reinsert.
+ */
+public abstract class RemovalOperator {
+  private final String name;
+  
+  protected RemovalOperator(String name) {
+    this.name = name;
+  }
+  
+  public String getName() {
+    return name;
+  }
+  
+  /**
+   * The input solution is not modified.
+   * 
+   * @return
+   *     a partial solution without numToRelax of the customers, which are its uninserted nodes
+   */
+  public abstract VrpSolution relax(VrpSolution sol, int numToRelax);
+  
+  /**
+   * Builds the partial solution left after removing the given customers.
+   */
+  protected static VrpSolution buildRelaxed(VrpSolution sol, List<Integer> removed) {
+    int[] custIds = new int[removed.size()];
+    for (int i = 0; i < custIds.length; i++) {
+      custIds[i] = removed.get(i);
+    }
+    return sol.removeCustomers(custIds);
+  }
+  
+  /**
+   * Draws an index into a list sorted from most to least preferred, favoring the front more
+   * strongly the higher the randomness measure is, as in Shaw removal.
+   */
+  protected static int drawRank(double random, int randomnessMeasure, int size) {
+    if (randomnessMeasure == Integer.MAX_VALUE) {
+      return 0;
+    }
+    return (int)(Math.pow(random, randomnessMeasure) * size);
+  }
+  
+  @Override
+  public String toString() {
+    return name;
+  }
+}
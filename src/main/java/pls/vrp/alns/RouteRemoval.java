@@ -0,0 +1,60 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import pls.vrp.VrpSolution;
+
+/**
+ * Empties randomly chosen routes, so that the search can spread their customers over the other
+ * routes. The last route taken only loses as many customers as are still needed, from a random
+ * starting point.
+ */
+public class RouteRemoval extends RemovalOperator {
+  private final Random rand;
+  
+  public RouteRemoval(Random rand) {
+    super("route");
+    this.rand = rand;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    List<List<Integer>> routes = new ArrayList<List<Integer>>(sol.getRoutes());
+    Collections.shuffle(routes, rand);
+    numToRelax = Math.min(numToRelax, sol.getProblem().getNumCities());
+    List<Integer> removed = new ArrayList<Integer>(numToRelax);
+    for (List<Integer> route : routes) {
+      int numLeft = numToRelax - removed.size();
+      if (numLeft == 0) {
+        break;
+      }
+      if (route.size() <= numLeft) {
+        removed.addAll(route);
+      } else {
+        int start = rand.nextInt(route.size() - numLeft + 1);
+        removed.addAll(route.subList(start, start + numLeft));
+      }
+    }
+    return buildRelaxed(sol, removed);
+  }
+}
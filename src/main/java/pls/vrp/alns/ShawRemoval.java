@@ -0,0 +1,38 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import pls.vrp.LnsRelaxer;
+import pls.vrp.VrpSolution;
+
+/**
+ * Removes customers that are close to each other and on different routes, using LnsRelaxer.
+ */
+public class ShawRemoval extends RemovalOperator {
+  private final LnsRelaxer relaxer;
+  
+  public ShawRemoval(LnsRelaxer relaxer) {
+    super("shaw");
+    this.relaxer = relaxer;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    return relaxer.relaxShaw(sol, numToRelax, -1);
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Removes strings of consecutive customers from routes that pass near a random seed customer,
+ * in the style of slack induction by string removals. Walking the seed's neighbor list, each
+ * neighbor on a route not yet touched has a string of random length containing it removed.
+ */
+public class StringRemoval extends RemovalOperator {
+  private final int maxStringLength;
+  private final Random rand;
+  
+  public StringRemoval(int maxStringLength, Random rand) {
+    super("string");
+    this.maxStringLength = maxStringLength;
+    this.rand = rand;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    VrpProblem problem = sol.getProblem();
+    int numCities = problem.getNumCities();
+    numToRelax = Math.min(numToRelax, numCities);
+    List<List<Integer>> routes = sol.getRoutes();
+    
+    List<Integer> removed = new ArrayList<Integer>(numToRelax);
+    Set<Integer> touchedRoutes = new HashSet<Integer>();
+    int seed = rand.nextInt(numCities);
+    int[] neighbors = problem.getNeighbors(seed);
+    for (int i = -1; i < neighbors.length && removed.size() < numToRelax; i++) {
+      int custId = (i == -1) ? seed : neighbors[i];
+      if (!touchedRoutes.add(sol.getRouteOf(custId))) {
+        continue;
+      }
+      List<Integer> route = routes.get(sol.getRouteOf(custId));
+      int length = Math.min(Math.min(1 + rand.nextInt(maxStringLength), route.size()), numToRelax - removed.size());
+      //a random window of the chosen length that contains the customer
+      int minStart = Math.max(0, sol.getPositionInRoute(custId) - length + 1);
+      int maxStart = Math.min(sol.getPositionInRoute(custId), route.size() - length);
+      int start = minStart + rand.nextInt(maxStart - minStart + 1);
+      removed.addAll(route.subList(start, start + length));
+    }
+    
+    //the neighbor lists can run out on routes before enough are removed
+    if (removed.size() < numToRelax) {
+      boolean[] removedMarks = new boolean[numCities];
+      for (int custId : removed) {
+        removedMarks[custId] = true;
+      }
+      while (removed.size() < numToRelax) {
+        int custId = rand.nextInt(numCities);
+        if (!removedMarks[custId]) {
+          removedMarks[custId] = true;
+          removed.add(custId);
+        }
+      }
+    }
+    return buildRelaxed(sol, removed);
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Like Shaw removal, but customers are related by how close their time windows are rather than
+ * how close they are in space, so the search gets to reorder customers that compete for the
+ * same part of the day.
+ */
+public class TimeWindowRemoval extends RemovalOperator {
+  private final int randomnessMeasure;
+  private final Random rand;
+  
+  public TimeWindowRemoval(int randomnessMeasure, Random rand) {
+    super("time-window");
+    this.randomnessMeasure = randomnessMeasure;
+    this.rand = rand;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    VrpProblem problem = sol.getProblem();
+    int[] windowStartTimes = problem.getWindowStartTimes();
+    int[] windowEndTimes = problem.getWindowEndTimes();
+    int numCities = problem.getNumCities();
+    numToRelax = Math.min(numToRelax, numCities);
+    
+    List<Integer> removed = new ArrayList<Integer>(numToRelax);
+    int[] remaining = new int[numCities];
+    int numRemaining = 0;
+    int first = rand.nextInt(numCities);
+    removed.add(first);
+    for (int i = 0; i < numCities; i++) {
+      if (i != first) {
+        remaining[numRemaining++] = i;
+      }
+    }
+    
+    //time window distance in the high bits and customer id in the low, so ordering the keys
+    //orders by distance with ties going to the lower id
+    long[] keys = new long[numCities];
+    while (removed.size() < numToRelax) {
+      int seed = removed.get(rand.nextInt(removed.size()));
+      for (int i = 0; i < numRemaining; i++) {
+        int custId = remaining[i];
+        long distance = Math.abs(windowStartTimes[seed] - windowStartTimes[custId]) 
+            + Math.abs(windowEndTimes[seed] - windowEndTimes[custId]);
+        keys[i] = (distance << 32) | custId;
+      }
+      int rank = drawRank(rand.nextDouble(), randomnessMeasure, numRemaining);
+      int custId = (int)select(keys, numRemaining, rank);
+      for (int i = 0; i < numRemaining; i++) {
+        if (remaining[i] == custId) {
+          remaining[i] = remaining[--numRemaining];
+          break;
+        }
+      }
+      removed.add(custId);
+    }
+    return buildRelaxed(sol, removed);
+  }
+  
+  /**
+   * Quickselect over the first size keys, which are all different.
+   * 
+   * @return
+   *     the key that would be at the given rank if they were sorted
+   */
+  private static long select(long[] keys, int size, int rank) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo < hi) {
+      //median of three keeps sorted and reverse sorted input linear
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] < keys[lo]) {
+        swap(keys, mid, lo);
+      }
+      if (keys[hi] < keys[lo]) {
+        swap(keys, hi, lo);
+      }
+      if (keys[hi] < keys[mid]) {
+        swap(keys, hi, mid);
+      }
+      swap(keys, mid, hi);
+      long pivot = keys[hi];
+      int store = lo;
+      for (int i = lo; i < hi; i++) {
+        if (keys[i] < pivot) {
+          swap(keys, i, store++);
+        }
+      }
+      swap(keys, store, hi);
+      if (store == rank) {
+        break;
+      } else if (store < rank) {
+        lo = store + 1;
+      } else {
+        hi = store - 1;
+      }
+    }
+    return keys[rank];
+  }
+  
+  private static void swap(long[] keys, int i, int j) {
+    long key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+  }
+}
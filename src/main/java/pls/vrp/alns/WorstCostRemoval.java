@@ -0,0 +1,71 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.alns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Removes customers whose removal saves the most distance, randomized by drawing ranks the same
+ * way Shaw removal does.
+ */
+public class WorstCostRemoval extends RemovalOperator {
+  private final int randomnessMeasure;
+  private final Random rand;
+  
+  public WorstCostRemoval(int randomnessMeasure, Random rand) {
+    super("worst-cost");
+    this.randomnessMeasure = randomnessMeasure;
+    this.rand = rand;
+  }
+  
+  @Override
+  public VrpSolution relax(VrpSolution sol, int numToRelax) {
+    VrpProblem problem = sol.getProblem();
+    final double[] savings = new double[problem.getNumCities()];
+    List<Integer> candidates = new ArrayList<Integer>(problem.getNumCities());
+    for (int custId : sol.getTour()) {
+      int prev = sol.getPredecessor(custId);
+      int next = sol.getSuccessor(custId);
+      savings[custId] = problem.getDistance(prev, custId) + problem.getDistance(custId, next) 
+          - problem.getDistance(prev, next);
+      candidates.add(custId);
+    }
+    Integer[] sorted = candidates.toArray(new Integer[candidates.size()]);
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(savings[b], savings[a]);
+      }
+    });
+    candidates = new ArrayList<Integer>(Arrays.asList(sorted));
+    
+    numToRelax = Math.min(numToRelax, candidates.size());
+    List<Integer> removed = new ArrayList<Integer>(numToRelax);
+    for (int i = 0; i < numToRelax; i++) {
+      removed.add(candidates.remove(drawRank(rand.nextDouble(), randomnessMeasure, candidates.size())));
+    }
+    return buildRelaxed(sol, removed);
+  }
+}
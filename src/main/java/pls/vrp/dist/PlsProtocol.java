@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.dist;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pls.vrp.VrpPlsSolution;
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Wire format shared by SocketPlsMaster and PlsWorker.
+ * 
+ * After the handshake the master sends the problem once, in the VrpBinaryFormat encoding without
+ * distances. Each round it then sends every worker
+ * the tasks it should run, and the worker answers with their results. Both sides remember the
+ * last solution each task had, and solutions are sent as deltas against it: routes that are
+ * unchanged are sent as indexes into the old solution, and only the rest are sent in full.
+ * Integers are written as varints.
+ */
+public class PlsProtocol {
+  public static final int MAGIC = 0x504c5331; //"PLS1"
+  public static final int VERSION = 2;
+  
+  public static final byte MSG_PROBLEM = 1;
+  public static final byte MSG_ROUND = 2;
+  public static final byte MSG_RESULTS = 3;
+  public static final byte MSG_SHUTDOWN = 4;
+  
+  /**
+   * Worker processes print this followed by their port once they are accepting connections.
+   */
+  public static final String READY_PREFIX = "PLS worker listening on port ";
+  
+  public static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+  
+  public static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+  
+  /**
+   * Zigzag encoded so that small negative values stay small.
+   */
+  public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+    writeVarInt(out, (value << 1) ^ (value >> 31));
+  }
+  
+  public static int readSignedVarInt(DataInput in) throws IOException {
+    int raw = readVarInt(in);
+    return (raw >>> 1) ^ -(raw & 1);
+  }
+  
+  /**
+   * Each route is written either as one plus its index in the base solution, or as a zero
+   * followed by its customers. Routes keep their order, so both ends decode the same solution.
+   * 
+   * @param base
+   *     the solution the receiver already has for this task, or null if it has none
+   */
+  public static void writeSolution(DataOutput out, VrpSolution sol, VrpSolution base) throws IOException {
+    Map<List<Integer>, Integer> baseRouteIndexes = new HashMap<List<Integer>, Integer>();
+    if (base != null) {
+      List<List<Integer>> baseRoutes = base.getRoutes();
+      for (int i = 0; i < baseRoutes.size(); i++) {
+        baseRouteIndexes.put(baseRoutes.get(i), i);
+      }
+    }
+    
+    out.writeDouble(sol.getToursCost());
+    writeVarInt(out, sol.getRoutes().size());
+    for (List<Integer> route : sol.getRoutes()) {
+      Integer baseIndex = baseRouteIndexes.remove(route);
+      if (baseIndex != null) {
+        writeVarInt(out, baseIndex + 1);
+      } else {
+        writeVarInt(out, 0);
+        writeVarInt(out, route.size());
+        for (int custId : route) {
+          writeVarInt(out, custId);
+        }
+      }
+    }
+  }
+  
+  public static VrpSolution readSolution(DataInput in, VrpSolution base, VrpProblem problem) throws IOException {
+    double toursCost = in.readDouble();
+    int numRoutes = readVarInt(in);
+    List<List<Integer>> routes = new ArrayList<List<Integer>>(numRoutes);
+    for (int i = 0; i < numRoutes; i++) {
+      int baseIndex = readVarInt(in) - 1;
+      if (baseIndex >= 0) {
+        if (base == null) {
+          throw new IOException("Solution delta refers to a base solution that is not known");
+        }
+        routes.add(base.getRoutes().get(baseIndex));
+      } else {
+        int routeSize = readVarInt(in);
+        List<Integer> route = new ArrayList<Integer>(routeSize);
+        for (int j = 0; j < routeSize; j++) {
+          route.add(readVarInt(in));
+        }
+        routes.add(route);
+      }
+    }
+    return new VrpSolution(routes, problem, toursCost);
+  }
+  
+  /**
+   * Writes the search settings and state of the given solution, but not the solution itself.
+   */
+  public static void writeState(DataOutput out, VrpPlsSolution plsSol) throws IOException {
+    writeVarInt(out, plsSol.getMaxIterations());
+    writeVarInt(out, plsSol.getMaxEscalation());
+    writeVarInt(out, plsSol.getRelaxationRandomness());
+    writeVarInt(out, plsSol.getMaxDiscrepancies());
+    writeVarInt(out, plsSol.getCurIteration());
+    writeVarInt(out, plsSol.getCurEscalation());
+    writeSignedVarInt(out, plsSol.getSolutionId());
+    writeSignedVarInt(out, plsSol.getParentSolutionId());
+  }
+  
+  public static VrpPlsSolution readState(DataInput in, VrpSolution sol) throws IOException {
+    int maxIter = readVarInt(in);
+    int maxEscalation = readVarInt(in);
+    int relaxationRandomness = readVarInt(in);
+    int maxDiscrepancies = readVarInt(in);
+    int curIter = readVarInt(in);
+    int curEscalation = readVarInt(in);
+    int solId = readSignedVarInt(in);
+    int parentSolId = readSignedVarInt(in);
+    VrpPlsSolution plsSol = new VrpPlsSolution(sol, maxIter, maxEscalation, relaxationRandomness, 
+        maxDiscrepancies, solId, parentSolId);
+    plsSol.setCurIteration(curIter);
+    plsSol.setCurEscalation(curEscalation);
+    return plsSol;
+  }
+}
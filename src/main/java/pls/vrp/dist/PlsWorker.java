@@ -0,0 +1,152 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.dist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import pls.vrp.PlsMaster;
+import pls.vrp.VrpBinaryFormat;
+import pls.vrp.VrpPlsSolution;
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Runs PLS rounds on behalf of a SocketPlsMaster. Each task in a round gets its own thread.
+ * 
+ * Usage: PlsWorker [port] [--once]
+ * 
+ * With port 0 or no port, an ephemeral port is used. Either way the port is printed to stdout
+ * once the worker is listening. With --once the worker exits after its first master disconnects.
+ */
+public class PlsWorker {
+  private static final Logger LOG = Logger.getLogger(PlsWorker.class);
+  
+  private VrpProblem problem;
+  //the last solution each task had, which the master sends deltas against
+  private Map<Integer, VrpSolution> taskSols = new HashMap<Integer, VrpSolution>();
+  
+  public static void main(String[] args) throws IOException {
+    int port = 0;
+    boolean once = false;
+    for (String arg : args) {
+      if (arg.equals("--once")) {
+        once = true;
+      } else {
+        port = Integer.parseInt(arg);
+      }
+    }
+    
+    ServerSocket serverSocket = new ServerSocket(port);
+    System.out.println(PlsProtocol.READY_PREFIX + serverSocket.getLocalPort());
+    System.out.flush();
+    do {
+      Socket socket = serverSocket.accept();
+      try {
+        new PlsWorker().serve(socket);
+      } catch (IOException ex) {
+        LOG.error("Lost connection to master", ex);
+      } finally {
+        socket.close();
+      }
+    } while (!once);
+    serverSocket.close();
+  }
+  
+  public void serve(Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    
+    if (in.readInt() != PlsProtocol.MAGIC) {
+      throw new IOException("Not a PLS master");
+    }
+    int version = in.readInt();
+    if (version != PlsProtocol.VERSION) {
+      throw new IOException("Unsupported protocol version " + version);
+    }
+    out.writeInt(PlsProtocol.MAGIC);
+    out.writeInt(PlsProtocol.VERSION);
+    out.flush();
+    
+    while (true) {
+      byte msg;
+      try {
+        msg = in.readByte();
+      } catch (EOFException ex) {
+        return;
+      }
+      switch (msg) {
+      case PlsProtocol.MSG_PROBLEM:
+        problem = VrpBinaryFormat.read(in);
+        taskSols.clear();
+        LOG.info("Received problem with " + problem.getNumCities() + " customers");
+        break;
+      case PlsProtocol.MSG_ROUND:
+        runRound(in, out);
+        break;
+      case PlsProtocol.MSG_SHUTDOWN:
+        return;
+      default:
+        throw new IOException("Unknown message type " + msg);
+      }
+    }
+  }
+  
+  private void runRound(DataInputStream in, DataOutputStream out) throws IOException {
+    if (problem == null) {
+      throw new IOException("Round received before problem");
+    }
+    //the master sends the time left rather than a deadline, so clocks don't need to agree
+    long timeToFinish = System.currentTimeMillis() + in.readLong();
+    long seed = in.readLong();
+    int numTasks = PlsProtocol.readVarInt(in);
+    int[] taskIds = new int[numTasks];
+    VrpPlsSolution[] sols = new VrpPlsSolution[numTasks];
+    for (int i = 0; i < numTasks; i++) {
+      taskIds[i] = PlsProtocol.readVarInt(in);
+      VrpSolution sol = PlsProtocol.readSolution(in, taskSols.get(taskIds[i]), problem);
+      sols[i] = PlsProtocol.readState(in, sol);
+      taskSols.put(taskIds[i], sol);
+    }
+    
+    VrpPlsSolution[] results = new PlsMaster(new Random(seed)).runRound(sols, timeToFinish);
+    
+    out.writeByte(PlsProtocol.MSG_RESULTS);
+    PlsProtocol.writeVarInt(out, numTasks);
+    for (int i = 0; i < numTasks; i++) {
+      VrpSolution resultSol = results[i].getSolution();
+      PlsProtocol.writeVarInt(out, taskIds[i]);
+      PlsProtocol.writeSolution(out, resultSol, taskSols.get(taskIds[i]));
+      PlsProtocol.writeState(out, results[i]);
+      taskSols.put(taskIds[i], resultSol);
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.dist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import pls.vrp.PlsMaster;
+import pls.vrp.VrpBinaryFormat;
+import pls.vrp.VrpPlsSolution;
+import pls.vrp.VrpProblem;
+import pls.vrp.VrpSolution;
+
+/**
+ * Runs PLS rounds on PlsWorker processes over TCP instead of on local threads. The problem is
+ * sent to each worker once when connecting, so a round costs only the solution deltas.
+ * Task i always runs on worker i % numWorkers.
+ */
+public class SocketPlsMaster extends PlsMaster {
+  private static final Logger LOG = Logger.getLogger(SocketPlsMaster.class);
+  
+  private final VrpProblem problem;
+  private final List<WorkerConnection> workers = new ArrayList<WorkerConnection>();
+  private final List<Process> localWorkers = new ArrayList<Process>();
+  
+  public SocketPlsMaster(Random rand, VrpProblem problem) {
+    super(rand);
+    this.problem = problem;
+  }
+  
+  /**
+   * Connects to a running worker and sends it the problem.
+   */
+  public void addWorker(InetSocketAddress address) throws IOException {
+    Socket socket = new Socket();
+    socket.connect(address);
+    WorkerConnection worker = new WorkerConnection(socket);
+    worker.handshake(problem);
+    workers.add(worker);
+    LOG.info("Connected to worker at " + address);
+  }
+  
+  /**
+   * Starts worker JVMs on this machine with the same classpath and vrp.*, pls.* and log4j.*
+   * properties as this one and connects to them.
+   * They are killed when this master is closed.
+   */
+  public void addLocalWorkers(int numWorkers) throws IOException {
+    String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    for (int i = 0; i < numWorkers; i++) {
+      List<String> command = new ArrayList<String>();
+      command.add(javaBin);
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.addAll(forwardedProperties());
+      command.add(PlsWorker.class.getName());
+      command.add("0");
+      command.add("--once");
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.redirectErrorStream(true);
+      Process process = builder.start();
+      localWorkers.add(process);
+      int port = awaitReady(process);
+      addWorker(new InetSocketAddress("localhost", port));
+    }
+  }
+  
+  /**
+   * The vrp.*, pls.* and log4j.* system properties of this JVM as -D arguments, so that local
+   * workers run with the same settings as the master.
+   */
+  private static List<String> forwardedProperties() {
+    List<String> args = new ArrayList<String>();
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith("vrp.") || name.startsWith("pls.") || name.startsWith("log4j.")) {
+        args.add("-D" + name + "=" + System.getProperty(name));
+      }
+    }
+    return args;
+  }
+  
+  /**
+   * Reads the worker's output until it reports its port, and then keeps draining it so that
+   * the worker never blocks on a full pipe.
+   */
+  private int awaitReady(Process process) throws IOException {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith(PlsProtocol.READY_PREFIX)) {
+        Thread drainer = new Thread("pls-worker-output") {
+          @Override
+          public void run() {
+            try {
+              String line;
+              while ((line = reader.readLine()) != null) {
+                LOG.info(line);
+              }
+            } catch (IOException ex) {
+              //worker is gone
+            }
+          }
+        };
+        drainer.setDaemon(true);
+        drainer.start();
+        return Integer.parseInt(line.substring(PlsProtocol.READY_PREFIX.length()).trim());
+      }
+      LOG.info(line);
+    }
+    throw new IOException("Worker process exited before it started listening");
+  }
+  
+  public int getNumWorkers() {
+    return workers.size();
+  }
+  
+  @Override
+  public VrpPlsSolution[] runRound(VrpPlsSolution[] sols, long timeToFinish) {
+    if (workers.isEmpty()) {
+      throw new IllegalStateException("No workers to run round on");
+    }
+    List<List<Integer>> tasksPerWorker = new ArrayList<List<Integer>>();
+    for (int w = 0; w < workers.size(); w++) {
+      tasksPerWorker.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < sols.length; i++) {
+      tasksPerWorker.get(i % workers.size()).add(i);
+    }
+    
+    VrpPlsSolution[] results = new VrpPlsSolution[sols.length];
+    try {
+      long timeLeft = Math.max(0, timeToFinish - System.currentTimeMillis());
+      //send every worker its tasks before waiting on any of them, so that they all run at once
+      for (int w = 0; w < workers.size(); w++) {
+        workers.get(w).sendRound(tasksPerWorker.get(w), sols, timeLeft, rand.nextLong());
+      }
+      for (int w = 0; w < workers.size(); w++) {
+        workers.get(w).receiveResults(results);
+      }
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to run round on workers", ex);
+    }
+    return results;
+  }
+  
+  /**
+   * Tells the workers to exit and closes the connections to them.
+   */
+  public void close() {
+    for (WorkerConnection worker : workers) {
+      worker.close();
+    }
+    workers.clear();
+    for (Process process : localWorkers) {
+      try {
+        process.waitFor();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        process.destroy();
+      }
+    }
+    localWorkers.clear();
+  }
+  
+  private class WorkerConnection {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    //the last solution each task had on this worker
+    private final Map<Integer, VrpSolution> taskSols = new HashMap<Integer, VrpSolution>();
+    
+    public WorkerConnection(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+    
+    public void handshake(VrpProblem problem) throws IOException {
+      out.writeInt(PlsProtocol.MAGIC);
+      out.writeInt(PlsProtocol.VERSION);
+      out.writeByte(PlsProtocol.MSG_PROBLEM);
+      VrpBinaryFormat.write(problem, out, false);
+      out.flush();
+      if (in.readInt() != PlsProtocol.MAGIC || in.readInt() != PlsProtocol.VERSION) {
+        throw new IOException("Worker speaks a different protocol");
+      }
+    }
+    
+    public void sendRound(List<Integer> taskIds, VrpPlsSolution[] sols, long timeLeft, long seed) 
+        throws IOException {
+      out.writeByte(PlsProtocol.MSG_ROUND);
+      out.writeLong(timeLeft);
+      out.writeLong(seed);
+      PlsProtocol.writeVarInt(out, taskIds.size());
+      for (int taskId : taskIds) {
+        VrpSolution sol = sols[taskId].getSolution();
+        PlsProtocol.writeVarInt(out, taskId);
+        PlsProtocol.writeSolution(out, sol, taskSols.get(taskId));
+        PlsProtocol.writeState(out, sols[taskId]);
+        taskSols.put(taskId, sol);
+      }
+      out.flush();
+    }
+    
+    public void receiveResults(VrpPlsSolution[] results) throws IOException {
+      byte msg = in.readByte();
+      if (msg != PlsProtocol.MSG_RESULTS) {
+        throw new IOException("Expected results from worker, got message type " + msg);
+      }
+      int numTasks = PlsProtocol.readVarInt(in);
+      for (int i = 0; i < numTasks; i++) {
+        int taskId = PlsProtocol.readVarInt(in);
+        VrpSolution sol = PlsProtocol.readSolution(in, taskSols.get(taskId), problem);
+        results[taskId] = PlsProtocol.readState(in, sol);
+        taskSols.put(taskId, sol);
+      }
+    }
+    
+    public void close() {
+      try {
+        out.writeByte(PlsProtocol.MSG_SHUTDOWN);
+        out.flush();
+      } catch (IOException ex) {
+        LOG.warn("Failed to tell worker to shut down", ex);
+      }
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        LOG.warn("Failed to close worker connection", ex);
+      }
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package pls.vrp.hm;
 
+import java.util.Arrays;
+
 /**
  * Computes a bound on the cost of inserting the remaining uninserted nodes.
  */
@@ -28,6 +30,11 @@ public class BoundRemaining {
     minInsertionCosts = new double[numCusts];
   }
   
+  public void reset() {
+    Arrays.fill(minInsertionCosts, 0);
+    bound = 0;
+  }
+  
   public void updateMinInsertionCost(int custId, double minCost) {
     bound = bound - minInsertionCosts[custId] + minCost;
     minInsertionCosts[custId] = minCost;
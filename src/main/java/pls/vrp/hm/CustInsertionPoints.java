@@ -14,81 +14,164 @@
  * limitations under the License.
  */
 
-package pls.vrp.hm;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeSet;
+package pls.vrp.hm;
 
 import org.apache.log4j.Logger;
 
+/**
+ * The points a customer can be inserted after, along with the cost of inserting it at each one.
+ * 
+ * Kept as a binary min-heap on cost, with the heap position of each point indexed by its route
+ * node id, so that adding, removing and updating the cost of a point are O(log n) and allocate
+ * nothing. Instances are reused across partial solutions with reset.
+ */
 public class CustInsertionPoints {
   private static final Logger LOG = Logger.getLogger(CustInsertionPoints.class);
   
+  private static final int INITIAL_CAPACITY = 16;
+  
   private BoundRemaining boundRemaining;
+  private CustOrdering ordering;
   
-  //cost of inserting at node with id index. last is depot.
-  private HashMap<RouteNode, Double> costs;
   private double minCost;
-  private TreeSet<InsertionPointCost> insertionPointCosts;
+  private int[] nodes;
+  private double[] costs;
+  //heap position + 1 of each insertion point by route node id, 0 if it's not an insertion point
+  private int[] positions;
+  private int size;
   private int custId;
-  private int numCusts;
   
-  public CustInsertionPoints(BoundRemaining boundRemaining, int custId, int numCusts) {
-    insertionPointCosts = new TreeSet<InsertionPointCost>();
+  /**
+   * @param numNodes
+   *     upper bound on the ids of route nodes that can become insertion points
+   */
+  public CustInsertionPoints(BoundRemaining boundRemaining, CustOrdering ordering, int custId, int numNodes) {
     this.boundRemaining = boundRemaining;
+    this.ordering = ordering;
     this.custId = custId;
-    this.costs = new HashMap<RouteNode, Double>();
-    this.numCusts = numCusts;
+    this.nodes = new int[INITIAL_CAPACITY];
+    this.costs = new double[INITIAL_CAPACITY];
+    this.positions = new int[numNodes];
   }
-    
-  public Iterator<RouteNode> inCostOrderIterator() {
-    return new InsertionPointIterator(insertionPointCosts.iterator());
+  
+  /**
+   * Empties this and reassigns it to the given customer.
+   */
+  public void reset(BoundRemaining boundRemaining, CustOrdering ordering, int custId, int numNodes) {
+    for (int i = 0; i < size; i++) {
+      positions[nodes[i]] = 0;
+    }
+    size = 0;
+    minCost = 0;
+    this.boundRemaining = boundRemaining;
+    this.ordering = ordering;
+    this.custId = custId;
+    if (positions.length < numNodes) {
+      positions = new int[numNodes];
+    }
   }
   
-  public void add(RouteNode node, double cost) {
-    if (insertionPointCosts.contains(new InsertionPointCost(node, cost))) {
-      LOG.error("Already contains " + node.custId);
+  public void add(int node, double cost) {
+    if (positions[node] != 0) {
+      LOG.error("Already contains " + node);
+      return;
     }
-    insertionPointCosts.add(new InsertionPointCost(node, cost));
-    setCost(node, cost);
+    if (size == nodes.length) {
+      grow();
+    }
+    set(size, node, cost);
+    size++;
+    siftUp(size - 1);
     propagateBound();
+    ordering.notifyPointsChanged(custId);
   }
   
   /**
    * Returns false if there are none left
    */
-  public boolean remove(RouteNode node) {
-    if (!insertionPointCosts.remove(new InsertionPointCost(node, getCost(node)))) {
+  public boolean remove(int node) {
+    int pos = positions[node] - 1;
+    if (pos < 0) {
       LOG.error("Removing an insertion point that is not there");
+    } else {
+      positions[node] = 0;
+      size--;
+      if (pos != size) {
+        set(pos, nodes[size], costs[size]);
+        siftDown(pos);
+        siftUp(pos);
+      }
     }
-    if (insertionPointCosts.isEmpty()) {
+    if (size == 0) {
+      ordering.notifyPointsChanged(custId);
       return false;
     } else {
       propagateBound();
+      ordering.notifyPointsChanged(custId);
       return true;
     }
   }
   
-  public void update(RouteNode node, double cost) {
-    if (!insertionPointCosts.remove(new InsertionPointCost(node, getCost(node)))) {
+  public void update(int node, double cost) {
+    int pos = positions[node] - 1;
+    if (pos < 0) {
       LOG.error("Update to element not already in insertion points");
+      add(node, cost);
+      return;
+    }
+    double oldCost = costs[pos];
+    costs[pos] = cost;
+    if (cost < oldCost) {
+      siftUp(pos);
+    } else {
+      siftDown(pos);
     }
-    insertionPointCosts.add(new InsertionPointCost(node, cost));
-    setCost(node, cost);
     propagateBound();
+    ordering.notifyPointsChanged(custId);
   }
   
-  private void setCost(RouteNode node, double cost) {
-    costs.put(node,  cost);
+  /**
+   * Sorts the insertion points so that getNode(i) and getCost(i) go from cheapest to most
+   * expensive. A sorted array is still a valid heap, so this can be done in place.
+   */
+  public void sortByCost() {
+    //repeatedly moving the min to the end leaves the points in descending order
+    for (int end = size - 1; end > 0; end--) {
+      swap(0, end);
+      siftDown(0, end);
+    }
+    for (int i = 0, j = size - 1; i < j; i++, j--) {
+      swap(i, j);
+    }
+  }
+  
+  public int size() {
+    return size;
   }
   
-  private double getCost(RouteNode node) {
-    return costs.get(node);
+  public boolean contains(int node) {
+    return positions[node] != 0;
+  }
+  
+  /**
+   * @return
+   *     the cost of inserting at the given point, which must be one of the insertion points
+   */
+  public double getCostOf(int node) {
+    return costs[positions[node] - 1];
+  }
+  
+  public int getNode(int index) {
+    return nodes[index];
+  }
+  
+  public double getCost(int index) {
+    return costs[index];
   }
   
   private void propagateBound() {
-    double newMinCost = insertionPointCosts.first().cost;
+    double newMinCost = costs[0];
     if (newMinCost != minCost) {
       boundRemaining.updateMinInsertionCost(custId, newMinCost);
       minCost = newMinCost;
@@ -96,77 +179,76 @@ public class CustInsertionPoints {
   }
   
   public boolean isEmpty() {
-    return insertionPointCosts.isEmpty();
+    return size == 0;
   }
   
   public double getMinCost() {
     return minCost;
   }
   
-  protected TreeSet<InsertionPointCost> getInsertionPointCosts() {
-    return insertionPointCosts;
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (costs[parent] <= costs[pos]) {
+        break;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
   }
   
-  @Override
-  public String toString() {
-    return insertionPointCosts.toString();
-  }
-  
-  protected static class InsertionPointCost implements Comparable<InsertionPointCost> {
-    public RouteNode insertAfter;
-    public double cost;
-    
-    public InsertionPointCost(RouteNode node, double cost) {
-      this.insertAfter = node;
-      this.cost = cost;
-//      TODO: if (cost < 0) {
-//        throw new IllegalStateException("something's up, cost of insertion is " + cost);
-//      }
-    }
-    
-    @Override
-    public int compareTo(InsertionPointCost other) {
-      int costDiff = (int)Math.signum(this.cost - other.cost);
-//      return costDiff != 0 ? costDiff : this.insertAfter.custId - other.insertAfter.custId;
-      return costDiff != 0 ? costDiff : this.insertAfter.hashCode() - other.insertAfter.hashCode();
-    }
-    
-    @Override
-    public boolean equals(Object o) {
-      InsertionPointCost other = (InsertionPointCost)o;
-      return this.cost == other.cost && other.insertAfter.hashCode() == this.insertAfter.hashCode();
-//      return this.cost == other.cost && other.insertAfter.custId == this.insertAfter.custId;
-    }
-    
-    @Override
-    public String toString() {
-      return "[custId=" + insertAfter.custId + ", cost=" + cost + "]";
-    }
+  private void siftDown(int pos) {
+    siftDown(pos, size);
   }
   
-  private class InsertionPointIterator implements Iterator<RouteNode> {
-    
-    private Iterator<InsertionPointCost> wrapped;
-    
-    public InsertionPointIterator(Iterator<InsertionPointCost> wrapped) {
-      this.wrapped = wrapped;
-    }
-    
-    @Override
-    public boolean hasNext() {
-      return wrapped.hasNext();
+  private void siftDown(int pos, int end) {
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= end) {
+        break;
+      }
+      if (child + 1 < end && costs[child + 1] < costs[child]) {
+        child++;
+      }
+      if (costs[pos] <= costs[child]) {
+        break;
+      }
+      swap(pos, child);
+      pos = child;
     }
-
-    @Override
-    public RouteNode next() {
-      return wrapped.next().insertAfter;
-    }
-
-    @Override
-    public void remove() {
-      // TODO Auto-generated method stub
-      
+  }
+  
+  private void swap(int i, int j) {
+    int node = nodes[i];
+    double cost = costs[i];
+    set(i, nodes[j], costs[j]);
+    set(j, node, cost);
+  }
+  
+  private void set(int pos, int node, double cost) {
+    nodes[pos] = node;
+    costs[pos] = cost;
+    positions[node] = pos + 1;
+  }
+  
+  private void grow() {
+    int[] newNodes = new int[nodes.length * 2];
+    System.arraycopy(nodes, 0, newNodes, 0, size);
+    nodes = newNodes;
+    double[] newCosts = new double[costs.length * 2];
+    System.arraycopy(costs, 0, newCosts, 0, size);
+    costs = newCosts;
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append("[node=" + nodes[i] + ", cost=" + costs[i] + "]");
     }
-    
+    return sb.append("]").toString();
   }
 }
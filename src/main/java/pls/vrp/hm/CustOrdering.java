@@ -0,0 +1,245 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+import java.util.Arrays;
+
+/**
+ * Orders the customers left to insert by how urgently they should be inserted next. They're kept
+ * in a max-heap on their priorities, indexed by customer id. Customers whose insertion points
+ * change are marked dirty, and their priorities are recomputed and sifted into place the next
+ * time the most urgent customer is asked for, so each change costs O(log n) at most once per
+ * search node. Ties go to the lowest customer id.
+ */
+public class CustOrdering {
+  
+  public enum Type {
+    //largest cheapest insertion cost
+    MAX_MIN_COST,
+    //largest sum of the differences between the cheapest and the next k-1 cheapest points,
+    //with customers that have fewer than k points first
+    REGRET,
+    //fewest insertion points, then largest cheapest insertion cost
+    FAIL_FIRST,
+    //regret, plus the cheapest insertion cost so that customers that are expensive to insert
+    //anywhere come earlier
+    COMBINED
+  }
+  
+  private final CustInsertionPoints[] custsInsertionPoints;
+  private final Type type;
+  private final int regretK;
+  
+  //customers ordered by priority, which is primaryKeys and then secondaryKeys
+  private final int[] heap;
+  //heap position + 1 of each customer, 0 if it's not in the heap
+  private final int[] positions;
+  private final double[] primaryKeys;
+  private final double[] secondaryKeys;
+  private int size;
+  private final CustSet dirty;
+  //scratch space for the k cheapest costs
+  private final double[] cheapest;
+  
+  /**
+   * @param regretK
+   *     how many of the cheapest insertion points REGRET and COMBINED look at, at least 2
+   */
+  public CustOrdering(Type type, int regretK, CustInsertionPoints[] custsInsertionPoints) {
+    if (regretK < 2) {
+      throw new IllegalArgumentException("regretK must be at least 2, not " + regretK);
+    }
+    int numCusts = custsInsertionPoints.length;
+    this.type = type;
+    this.regretK = regretK;
+    this.custsInsertionPoints = custsInsertionPoints;
+    heap = new int[numCusts];
+    positions = new int[numCusts];
+    primaryKeys = new double[numCusts];
+    secondaryKeys = new double[numCusts];
+    dirty = new CustSet(numCusts);
+    cheapest = new double[regretK];
+  }
+  
+  public Type getType() {
+    return type;
+  }
+  
+  public int getRegretK() {
+    return regretK;
+  }
+  
+  public void reset() {
+    for (int i = 0; i < size; i++) {
+      positions[heap[i]] = 0;
+    }
+    size = 0;
+    dirty.clear();
+  }
+  
+  /**
+   * Adds a customer to be inserted, with the priority it had when it was removed. Customers new
+   * to the ordering get theirs when their insertion points are first added.
+   */
+  public void add(int custId) {
+    if (positions[custId] != 0) {
+      return;
+    }
+    heap[size] = custId;
+    positions[custId] = size + 1;
+    size++;
+    siftUp(size - 1);
+  }
+  
+  public void remove(int custId) {
+    int pos = positions[custId] - 1;
+    if (pos < 0) {
+      return;
+    }
+    positions[custId] = 0;
+    size--;
+    if (pos != size) {
+      heap[pos] = heap[size];
+      positions[heap[pos]] = pos + 1;
+      siftDown(pos);
+      siftUp(pos);
+    }
+  }
+  
+  public void notifyPointsChanged(int custId) {
+    dirty.add(custId);
+  }
+  
+  /**
+   * @return
+   *     the customer that should be inserted next, or -1 if there are none left
+   */
+  public int peek() {
+    for (int custId = dirty.first(); custId >= 0; custId = dirty.next(custId)) {
+      int pos = positions[custId] - 1;
+      if (pos < 0) {
+        //it's been inserted, and will be refreshed when it's added back if its points change
+        continue;
+      }
+      dirty.remove(custId);
+      double oldPrimary = primaryKeys[custId];
+      double oldSecondary = secondaryKeys[custId];
+      computeKeys(custId, custsInsertionPoints[custId]);
+      if (primaryKeys[custId] > oldPrimary 
+          || (primaryKeys[custId] == oldPrimary && secondaryKeys[custId] > oldSecondary)) {
+        siftUp(pos);
+      } else if (primaryKeys[custId] != oldPrimary || secondaryKeys[custId] != oldSecondary) {
+        siftDown(pos);
+      }
+    }
+    return size > 0 ? heap[0] : -1;
+  }
+  
+  private void computeKeys(int custId, CustInsertionPoints points) {
+    switch (type) {
+      case MAX_MIN_COST:
+        primaryKeys[custId] = points.getMinCost();
+        secondaryKeys[custId] = 0;
+        break;
+      case FAIL_FIRST:
+        primaryKeys[custId] = -points.size();
+        secondaryKeys[custId] = points.getMinCost();
+        break;
+      case REGRET:
+      case COMBINED:
+        int numCheapest = findCheapest(points);
+        double regret = 0;
+        for (int i = 1; i < numCheapest; i++) {
+          regret += cheapest[i] - cheapest[0];
+        }
+        primaryKeys[custId] = regretK - numCheapest;
+        secondaryKeys[custId] = (type == Type.COMBINED) ? regret + points.getMinCost() : regret;
+        break;
+    }
+  }
+  
+  /**
+   * Fills cheapest with the costs of up to regretK of the given points, cheapest first. They're
+   * all within the first 2^regretK - 1 positions of the points' heap.
+   * 
+   * @return
+   *     how many there were
+   */
+  private int findCheapest(CustInsertionPoints points) {
+    Arrays.fill(cheapest, Double.POSITIVE_INFINITY);
+    int numToScan = (int)Math.min(points.size(), (1L << Math.min(regretK, 62)) - 1);
+    for (int i = 0; i < numToScan; i++) {
+      double cost = points.getCost(i);
+      if (cost < cheapest[regretK - 1]) {
+        int j = regretK - 1;
+        while (j > 0 && cheapest[j - 1] > cost) {
+          cheapest[j] = cheapest[j - 1];
+          j--;
+        }
+        cheapest[j] = cost;
+      }
+    }
+    return Math.min(points.size(), regretK);
+  }
+  
+  private boolean before(int custId1, int custId2) {
+    if (primaryKeys[custId1] != primaryKeys[custId2]) {
+      return primaryKeys[custId1] > primaryKeys[custId2];
+    }
+    if (secondaryKeys[custId1] != secondaryKeys[custId2]) {
+      return secondaryKeys[custId1] > secondaryKeys[custId2];
+    }
+    return custId1 < custId2;
+  }
+  
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (!before(heap[pos], heap[parent])) {
+        break;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+  
+  private void siftDown(int pos) {
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && before(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!before(heap[child], heap[pos])) {
+        break;
+      }
+      swap(pos, child);
+      pos = child;
+    }
+  }
+  
+  private void swap(int i, int j) {
+    int custId = heap[i];
+    heap[i] = heap[j];
+    heap[j] = custId;
+    positions[heap[i]] = i + 1;
+    positions[heap[j]] = j + 1;
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+/**
+ * A set of customer ids backed by a bitset with one bit per customer in the problem. Adding,
+ * removing, checking membership and iterating never allocate. To iterate:
+ * 
+ *   for (int custId = set.first(); custId >= 0; custId = set.next(custId))
+ * 
+ * It's safe to remove the current customer while iterating.
+ */
+public class CustSet {
+  private final long[] words;
+  private int size;
+  
+  public CustSet(int numCusts) {
+    words = new long[(numCusts + 63) >>> 6];
+  }
+  
+  /**
+   * @return
+   *     true if the customer was not already in the set
+   */
+  public boolean add(int custId) {
+    int wordIndex = custId >>> 6;
+    long bit = 1L << custId;
+    if ((words[wordIndex] & bit) != 0) {
+      return false;
+    }
+    words[wordIndex] |= bit;
+    size++;
+    return true;
+  }
+  
+  /**
+   * @return
+   *     true if the customer was in the set
+   */
+  public boolean remove(int custId) {
+    int wordIndex = custId >>> 6;
+    long bit = 1L << custId;
+    if ((words[wordIndex] & bit) == 0) {
+      return false;
+    }
+    words[wordIndex] &= ~bit;
+    size--;
+    return true;
+  }
+  
+  public boolean contains(int custId) {
+    return (words[custId >>> 6] & (1L << custId)) != 0;
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  public void clear() {
+    for (int i = 0; i < words.length; i++) {
+      words[i] = 0;
+    }
+    size = 0;
+  }
+  
+  /**
+   * @return
+   *     the smallest customer id in the set, or -1 if it's empty
+   */
+  public int first() {
+    return next(-1);
+  }
+  
+  /**
+   * @return
+   *     the smallest customer id in the set that is greater than the given one, or -1 if there is none
+   */
+  public int next(int custId) {
+    int from = custId + 1;
+    int wordIndex = from >>> 6;
+    if (wordIndex >= words.length) {
+      return -1;
+    }
+    long word = words[wordIndex] & (-1L << from);
+    while (word == 0) {
+      if (++wordIndex == words.length) {
+        return -1;
+      }
+      word = words[wordIndex];
+    }
+    return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int custId = first(); custId >= 0; custId = next(custId)) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(custId);
+    }
+    return sb.append("]").toString();
+  }
+}
@@ -16,16 +16,15 @@
 
 package pls.vrp.hm;
 
-import java.util.List;
-
 public class InsertionEffects {
-  public List<RemovedCustomers> removedCustsList;
-  public RouteNode insertedNode;
+  public int insertedNode;
+  //the trail mark from before the insertion
+  public int trailMark;
   public boolean consistent;
   
-  public InsertionEffects(RouteNode insertedNode, List<RemovedCustomers> removedCustsList, boolean consistent) {
-    this.removedCustsList = removedCustsList;
+  public InsertionEffects(int insertedNode, int trailMark, boolean consistent) {
     this.insertedNode = insertedNode;
+    this.trailMark = trailMark;
     this.consistent = consistent;
   }
 }
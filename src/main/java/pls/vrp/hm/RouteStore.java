@@ -0,0 +1,149 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+/**
+ * The routes of a partial solution during search, stored as parallel arrays indexed by node id
+ * instead of as linked objects. Customer nodes have their customer id as node id. Route r starts
+ * at the depot node numCities+2r and ends at the depot node numCities+2r+1.
+ * 
+ * A store is allocated once per searcher and reset for every partial solution.
+ */
+public class RouteStore {
+  private final int numCities;
+  private int numRoutes;
+  
+  public int[] next;
+  public int[] prev;
+  //the earliest that the current path allows us to depart from the node
+  public double[] minDepartTime;
+  //the latest that the current path allows us to arrive at the node and not violate
+  //time windows in the future
+  public double[] maxArriveTime;
+  public int[] routeOf;
+  //ids of customers that can be inserted after each node
+  public CustSet[] insertableAfter;
+  //by route
+  public int[] remainingCapacity;
+  public double[] routeCost;
+  
+  public RouteStore(int numCities) {
+    this.numCities = numCities;
+    allocate(0);
+  }
+  
+  /**
+   * Builds the given routes, clearing everything from the previous partial solution.
+   * 
+   * @param tour
+   *     customers of all the routes, one after another
+   * @param routeStarts
+   *     offset of each route in the tour, followed by the length of the tour
+   * @param routeCosts
+   *     cost of each route, which insertions then add to
+   */
+  public void reset(int[] tour, int[] routeStarts, double[] routeCosts, int[] demands, int capacity) {
+    int oldNumNodes = getNumNodes();
+    int newNumRoutes = routeStarts.length - 1;
+    if (newNumRoutes > remainingCapacity.length) {
+      allocate(newNumRoutes);
+      oldNumNodes = 0;
+    }
+    numRoutes = newNumRoutes;
+    
+    int numNodesToClear = Math.max(oldNumNodes, getNumNodes());
+    for (int node = 0; node < numNodesToClear; node++) {
+      if (!insertableAfter[node].isEmpty()) {
+        insertableAfter[node].clear();
+      }
+      next[node] = -1;
+      prev[node] = -1;
+      routeOf[node] = -1;
+      minDepartTime[node] = 0;
+      maxArriveTime[node] = 0;
+    }
+    
+    for (int r = 0; r < numRoutes; r++) {
+      remainingCapacity[r] = capacity;
+      routeCost[r] = routeCosts[r];
+      int prevNode = getRouteStart(r);
+      routeOf[prevNode] = r;
+      for (int i = routeStarts[r]; i < routeStarts[r + 1]; i++) {
+        int custId = tour[i];
+        link(prevNode, custId);
+        routeOf[custId] = r;
+        remainingCapacity[r] -= demands[custId];
+        prevNode = custId;
+      }
+      int endNode = getRouteEnd(r);
+      link(prevNode, endNode);
+      routeOf[endNode] = r;
+    }
+  }
+  
+  private void link(int before, int after) {
+    next[before] = after;
+    prev[after] = before;
+  }
+  
+  private void allocate(int maxRoutes) {
+    int numNodes = numCities + 2 * maxRoutes;
+    next = new int[numNodes];
+    prev = new int[numNodes];
+    minDepartTime = new double[numNodes];
+    maxArriveTime = new double[numNodes];
+    routeOf = new int[numNodes];
+    insertableAfter = new CustSet[numNodes];
+    for (int i = 0; i < numNodes; i++) {
+      insertableAfter[i] = new CustSet(numCities);
+    }
+    remainingCapacity = new int[maxRoutes];
+    routeCost = new double[maxRoutes];
+  }
+  
+  /**
+   * @return
+   *     the customer id of the given node, or -1 if it's a depot node
+   */
+  public int custId(int node) {
+    return node < numCities ? node : -1;
+  }
+  
+  public boolean isDepot(int node) {
+    return node >= numCities;
+  }
+  
+  public int getRouteStart(int route) {
+    return numCities + 2 * route;
+  }
+  
+  public int getRouteEnd(int route) {
+    return numCities + 2 * route + 1;
+  }
+  
+  public int getNumRoutes() {
+    return numRoutes;
+  }
+  
+  /**
+   * Upper bound on the ids of the nodes in the current routes.
+   */
+  public int getNumNodes() {
+    return numCities + 2 * numRoutes;
+  }
+}
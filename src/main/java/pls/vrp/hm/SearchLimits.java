@@ -0,0 +1,62 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+/**
+ * When a solve should give up and return the best solution it has found so far: at a wall-clock
+ * deadline, after evaluating a number of nodes, or when cancelled from another thread. One
+ * instance may be shared by searchers on several threads, since they keep their own node counts.
+ */
+public class SearchLimits {
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
+  public static final long NO_NODE_BUDGET = Long.MAX_VALUE;
+  
+  private final long deadline;
+  private final long nodeBudget;
+  private volatile boolean cancelled;
+  
+  /**
+   * @param deadline
+   *     wall-clock time in millis, or NO_DEADLINE
+   * @param nodeBudget
+   *     the most nodes each solve may evaluate, or NO_NODE_BUDGET
+   */
+  public SearchLimits(long deadline, long nodeBudget) {
+    this.deadline = deadline;
+    this.nodeBudget = nodeBudget;
+  }
+  
+  public long getDeadline() {
+    return deadline;
+  }
+  
+  public long getNodeBudget() {
+    return nodeBudget;
+  }
+  
+  /**
+   * Makes every solve using these limits stop soon. Safe to call from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+  
+  public boolean isCancelled() {
+    return cancelled;
+  }
+}
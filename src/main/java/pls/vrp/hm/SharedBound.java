@@ -0,0 +1,48 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of the best solution found by any of the searchers working on the same solve, so that
+ * each prunes against the others' solutions too.
+ */
+class SharedBound {
+  private final AtomicLong bits;
+  
+  public SharedBound(double initial) {
+    bits = new AtomicLong(Double.doubleToLongBits(initial));
+  }
+  
+  public double get() {
+    return Double.longBitsToDouble(bits.get());
+  }
+  
+  /**
+   * Lowers the bound to the given cost if it's lower.
+   */
+  public void offer(double cost) {
+    while (true) {
+      long cur = bits.get();
+      if (cost >= Double.longBitsToDouble(cur) || bits.compareAndSet(cur, Double.doubleToLongBits(cost))) {
+        return;
+      }
+    }
+  }
+}
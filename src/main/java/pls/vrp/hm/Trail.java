@@ -0,0 +1,232 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.hm;
+
+/**
+ * Undo log for the search state. Every change an insertion makes to the routes or to the
+ * insertion points goes through this, which records the old value on a stack of primitives.
+ * Backtracking pops back to a mark taken before the insertion, so reverting costs time
+ * proportional to what changed and recomputes nothing.
+ */
+public class Trail {
+  private static final int NEXT = 0;
+  private static final int PREV = 1;
+  private static final int ROUTE_OF = 2;
+  private static final int REMAINING_CAPACITY = 3;
+  private static final int MIN_DEPART_TIME = 4;
+  private static final int MAX_ARRIVE_TIME = 5;
+  private static final int INSERTABLE_ADDED = 6;
+  private static final int INSERTABLE_REMOVED = 7;
+  private static final int POINT_ADDED = 8;
+  private static final int POINT_REMOVED = 9;
+  private static final int POINT_UPDATED = 10;
+  private static final int ROUTE_COST = 11;
+  
+  private static final int INITIAL_CAPACITY = 1024;
+  
+  private final RouteStore routes;
+  private final CustInsertionPoints[] custsInsertionPoints;
+  
+  //one entry per change: what changed, which node/route/customer, and the old value
+  private byte[] ops;
+  private int[] args1;
+  private int[] args2;
+  private double[] oldVals;
+  private int size;
+  
+  public Trail(RouteStore routes, CustInsertionPoints[] custsInsertionPoints) {
+    this.routes = routes;
+    this.custsInsertionPoints = custsInsertionPoints;
+    ops = new byte[INITIAL_CAPACITY];
+    args1 = new int[INITIAL_CAPACITY];
+    args2 = new int[INITIAL_CAPACITY];
+    oldVals = new double[INITIAL_CAPACITY];
+  }
+  
+  /**
+   * @return
+   *     a mark to pass to undo
+   */
+  public int mark() {
+    return size;
+  }
+  
+  /**
+   * Forgets everything, without undoing it.
+   */
+  public void clear() {
+    size = 0;
+  }
+  
+  public void setNext(int node, int next) {
+    push(NEXT, node, routes.next[node], 0);
+    routes.next[node] = next;
+  }
+  
+  public void setPrev(int node, int prev) {
+    push(PREV, node, routes.prev[node], 0);
+    routes.prev[node] = prev;
+  }
+  
+  public void setRouteOf(int node, int route) {
+    push(ROUTE_OF, node, routes.routeOf[node], 0);
+    routes.routeOf[node] = route;
+  }
+  
+  public void setRemainingCapacity(int route, int remainingCapacity) {
+    push(REMAINING_CAPACITY, route, routes.remainingCapacity[route], 0);
+    routes.remainingCapacity[route] = remainingCapacity;
+  }
+  
+  public void setRouteCost(int route, double routeCost) {
+    push(ROUTE_COST, route, 0, routes.routeCost[route]);
+    routes.routeCost[route] = routeCost;
+  }
+  
+  public void setMinDepartTime(int node, double minDepartTime) {
+    push(MIN_DEPART_TIME, node, 0, routes.minDepartTime[node]);
+    routes.minDepartTime[node] = minDepartTime;
+  }
+  
+  public void setMaxArriveTime(int node, double maxArriveTime) {
+    push(MAX_ARRIVE_TIME, node, 0, routes.maxArriveTime[node]);
+    routes.maxArriveTime[node] = maxArriveTime;
+  }
+  
+  /**
+   * Records that custId was added to the given node's insertable set by the caller.
+   */
+  public void insertableAdded(int node, int custId) {
+    push(INSERTABLE_ADDED, node, custId, 0);
+  }
+  
+  /**
+   * Records that custId was removed from the given node's insertable set by the caller.
+   */
+  public void insertableRemoved(int node, int custId) {
+    push(INSERTABLE_REMOVED, node, custId, 0);
+  }
+  
+  public void addPoint(int custId, int node, double cost) {
+    CustInsertionPoints points = custsInsertionPoints[custId];
+    if (!points.contains(node)) {
+      push(POINT_ADDED, custId, node, 0);
+    }
+    points.add(node, cost);
+  }
+  
+  /**
+   * @return
+   *     false if the customer has no insertion points left
+   */
+  public boolean removePoint(int custId, int node) {
+    CustInsertionPoints points = custsInsertionPoints[custId];
+    if (points.contains(node)) {
+      push(POINT_REMOVED, custId, node, points.getCostOf(node));
+    }
+    return points.remove(node);
+  }
+  
+  public void updatePoint(int custId, int node, double cost) {
+    CustInsertionPoints points = custsInsertionPoints[custId];
+    if (points.contains(node)) {
+      push(POINT_UPDATED, custId, node, points.getCostOf(node));
+    } else {
+      push(POINT_ADDED, custId, node, 0);
+    }
+    points.update(node, cost);
+  }
+  
+  /**
+   * Undoes every change made since the given mark, most recent first.
+   */
+  public void undo(int mark) {
+    while (size > mark) {
+      size--;
+      int arg1 = args1[size];
+      int arg2 = args2[size];
+      switch (ops[size]) {
+      case NEXT:
+        routes.next[arg1] = arg2;
+        break;
+      case PREV:
+        routes.prev[arg1] = arg2;
+        break;
+      case ROUTE_OF:
+        routes.routeOf[arg1] = arg2;
+        break;
+      case REMAINING_CAPACITY:
+        routes.remainingCapacity[arg1] = arg2;
+        break;
+      case ROUTE_COST:
+        routes.routeCost[arg1] = oldVals[size];
+        break;
+      case MIN_DEPART_TIME:
+        routes.minDepartTime[arg1] = oldVals[size];
+        break;
+      case MAX_ARRIVE_TIME:
+        routes.maxArriveTime[arg1] = oldVals[size];
+        break;
+      case INSERTABLE_ADDED:
+        routes.insertableAfter[arg1].remove(arg2);
+        break;
+      case INSERTABLE_REMOVED:
+        routes.insertableAfter[arg1].add(arg2);
+        break;
+      case POINT_ADDED:
+        custsInsertionPoints[arg1].remove(arg2);
+        break;
+      case POINT_REMOVED:
+        custsInsertionPoints[arg1].add(arg2, oldVals[size]);
+        break;
+      case POINT_UPDATED:
+        custsInsertionPoints[arg1].update(arg2, oldVals[size]);
+        break;
+      default:
+        throw new IllegalStateException("Unknown trail entry " + ops[size]);
+      }
+    }
+  }
+  
+  private void push(int op, int arg1, int arg2, double oldVal) {
+    if (size == ops.length) {
+      grow();
+    }
+    ops[size] = (byte)op;
+    args1[size] = arg1;
+    args2[size] = arg2;
+    oldVals[size] = oldVal;
+    size++;
+  }
+  
+  private void grow() {
+    int newCapacity = ops.length * 2;
+    byte[] newOps = new byte[newCapacity];
+    System.arraycopy(ops, 0, newOps, 0, size);
+    ops = newOps;
+    int[] newArgs1 = new int[newCapacity];
+    System.arraycopy(args1, 0, newArgs1, 0, size);
+    args1 = newArgs1;
+    int[] newArgs2 = new int[newCapacity];
+    System.arraycopy(args2, 0, newArgs2, 0, size);
+    args2 = newArgs2;
+    double[] newOldVals = new double[newCapacity];
+    System.arraycopy(oldVals, 0, newOldVals, 0, size);
+    oldVals = newOldVals;
+  }
+}
@@ -18,21 +18,61 @@ package pls.vrp.hm;
 
 import org.apache.log4j.Logger;
 
+import pls.vrp.metrics.SearchMetrics;
+
+/**
+ * Counts for a single solve. Insertion and reversion times are also recorded into the shared
+ * SearchMetrics, if there is one.
+ */
 public class VrpCpStats {
   
   private static final Logger LOG = Logger.getLogger(VrpCpStats.class);
   
+  private final SearchMetrics metrics;
   private int nEvaluated;
+  private int nPrunedByBound;
+  private int nPrunedByCapacity;
   private long insertTimeStart;
   private long maxInsertTime;
+  private long revertTimeStart;
   private boolean quiet;
   
   public VrpCpStats(boolean quiet) {
     this.quiet = quiet;
+    this.metrics = null;
   }
   
   public VrpCpStats() {
-    quiet = true;
+    this(true);
+  }
+  
+  /**
+   * @param metrics
+   *     where to record insertion and reversion times, or null
+   */
+  public VrpCpStats(SearchMetrics metrics) {
+    this.quiet = true;
+    this.metrics = metrics;
+  }
+  
+  /**
+   * @return
+   *     empty stats for a task searching part of the same solve, recording into the same metrics
+   */
+  public VrpCpStats forTask() {
+    VrpCpStats stats = new VrpCpStats(metrics);
+    stats.quiet = quiet;
+    return stats;
+  }
+  
+  /**
+   * Adds in the counts of a task's stats.
+   */
+  public void add(VrpCpStats other) {
+    nEvaluated += other.nEvaluated;
+    nPrunedByBound += other.nPrunedByBound;
+    nPrunedByCapacity += other.nPrunedByCapacity;
+    maxInsertTime = Math.max(maxInsertTime, other.maxInsertTime);
   }
   
   public void reportNodeEvaluated() {
@@ -43,15 +83,50 @@ public class VrpCpStats {
     return nEvaluated;
   }
   
+  /**
+   * An insertion point skipped because the cost would reach the best so far.
+   */
+  public void reportPrunedByBound() {
+    nPrunedByBound++;
+  }
+  
+  public int getNumPrunedByBound() {
+    return nPrunedByBound;
+  }
+  
+  /**
+   * An insertion point skipped because its route lacks the capacity.
+   */
+  public void reportPrunedByCapacity() {
+    nPrunedByCapacity++;
+  }
+  
+  public int getNumPrunedByCapacity() {
+    return nPrunedByCapacity;
+  }
+  
   public void reportAboutToInsert() {
-    insertTimeStart = System.currentTimeMillis();
+    insertTimeStart = System.nanoTime();
   }
   
   public void reportFinishedInsertion() {
-    long time = System.currentTimeMillis() - insertTimeStart;
+    long time = System.nanoTime() - insertTimeStart;
     if (time > maxInsertTime) {
       maxInsertTime = time;
     }
+    if (metrics != null) {
+      metrics.reportInsertion(time);
+    }
+  }
+  
+  public void reportAboutToRevert() {
+    revertTimeStart = System.nanoTime();
+  }
+  
+  public void reportFinishedReversion() {
+    if (metrics != null) {
+      metrics.reportReversion(System.nanoTime() - revertTimeStart);
+    }
   }
   
   public void reportNewBestSolution(double cost) {
@@ -60,7 +135,14 @@ public class VrpCpStats {
     }
   }
   
+  /**
+   * In milliseconds.
+   */
   public long getMaxInsertTime() {
+    return maxInsertTime / 1000000;
+  }
+  
+  public long getMaxInsertNanos() {
     return maxInsertTime;
   }
 }
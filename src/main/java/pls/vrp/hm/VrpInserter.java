@@ -16,11 +16,6 @@
 
 package pls.vrp.hm;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
-
 import org.apache.log4j.Logger;
 
 import pls.vrp.VrpProblem;
@@ -29,12 +24,29 @@ public class VrpInserter {
   private static final Logger LOG = Logger.getLogger(VrpInserter.class);
   
   private VrpProblem problem;
+  private Trail trail;
+  //scratch space for the nodes whose times change on an insertion
+  private int[] minDepartTimeChangedNodes;
+  private int[] maxArriveTimeChangedNodes;
+  //scratch space for customers pruned from an insertion point, always left empty
+  private CustSet removed;
+  private int maxDemand;
   
-  public VrpInserter(VrpProblem problem) {
+  public VrpInserter(VrpProblem problem, Trail trail) {
     this.problem = problem;
+    this.trail = trail;
+    this.minDepartTimeChangedNodes = new int[problem.getNumCities()];
+    this.maxArriveTimeChangedNodes = new int[problem.getNumCities()];
+    this.removed = new CustSet(problem.getNumCities());
+    for (int demand : problem.getDemands()) {
+      maxDemand = Math.max(maxDemand, demand);
+    }
   }
 
   /**
+   * Every change is made through the trail, so that it can be undone by the reverter. Stops as
+   * soon as some customer is left with no insertion points, returning effects that aren't
+   * consistent, which still need to be reverted.
    * 
    * @param beforeNode
    *     Insert the given customer after the given beforeNode
@@ -42,90 +54,157 @@ public class VrpInserter {
    *     ID of the customer to be inserted
    * @return
    */
-  public InsertionEffects insert(RouteNode beforeNode, int custId, CustInsertionPoints[] custInsertionPoints) {
+  public InsertionEffects insert(RouteStore routes, int beforeNode, int custId, 
+      CustInsertionPoints[] custInsertionPoints) {
     int[] serviceTimes = problem.getServiceTimes();
     int[] windowStartTimes = problem.getWindowStartTimes();
     int[] windowEndTimes = problem.getWindowEndTimes();
-    boolean consistent = true;
+    int[] next = routes.next;
+    int[] prev = routes.prev;
+    double[] minDepartTimes = routes.minDepartTime;
+    double[] maxArriveTimes = routes.maxArriveTime;
+    CustSet[] insertableAfter = routes.insertableAfter;
+    int trailMark = trail.mark();
     
     //reduce route capacity by demand
-    beforeNode.route.remainingCapacity -= problem.getDemands()[custId];
+    int route = routes.routeOf[beforeNode];
+    int remainingCapacity = routes.remainingCapacity[route] - problem.getDemands()[custId];
+    trail.setRemainingCapacity(route, remainingCapacity);
 
-    RouteNode afterNode = beforeNode.next;
+    int afterNode = next[beforeNode];
+    int beforeCustId = routes.custId(beforeNode);
+    int afterCustId = routes.custId(afterNode);
     
-    RouteNode newNode = new RouteNode(custId, afterNode, beforeNode, beforeNode.route);
-    newNode.minDepartTime = VrpUtils.calcMinDepartTime(beforeNode.minDepartTime, 
-        problem.getDistance(beforeNode.custId, custId), windowStartTimes[custId], serviceTimes[custId]);
-    newNode.maxArriveTime = VrpUtils.calcMaxArriveTime(afterNode.maxArriveTime, 
-        problem.getDistance(afterNode.custId, custId), windowEndTimes[custId], serviceTimes[custId]);
+    //add to route cost
+    trail.setRouteCost(route, routes.routeCost[route] 
+        + VrpUtils.costOfInsertion(beforeCustId, afterCustId, custId, problem));
     
-    afterNode.prev = newNode;
-    beforeNode.next = newNode;
-
-    //TODO: save this somewhere
-    //TODO: need to remove custId from beforeNode.insertableAfter.  can do this while copying
+    //customer nodes are identified by their customer ids
+    int newNode = custId;
+    trail.setRouteOf(newNode, route);
+    trail.setMinDepartTime(newNode, VrpUtils.calcMinDepartTime(minDepartTimes[beforeNode], 
+        problem.getDistance(beforeCustId, custId), windowStartTimes[custId], serviceTimes[custId]));
+    trail.setMaxArriveTime(newNode, VrpUtils.calcMaxArriveTime(maxArriveTimes[afterNode], 
+        problem.getDistance(afterCustId, custId), windowEndTimes[custId], serviceTimes[custId]));
     
+    trail.setNext(newNode, afterNode);
+    trail.setPrev(newNode, beforeNode);
+    trail.setPrev(afterNode, newNode);
+    trail.setNext(beforeNode, newNode);
+
     //find all cities that can still be inserted after city
     //update insertion lists for those cities
     
-    newNode.insertableAfter = VrpUtils.validateInsertableCusts(
-        beforeNode.insertableAfter.iterator(), custId, afterNode.custId, newNode.minDepartTime, 
-        afterNode.maxArriveTime, problem, false);
+    //the new node's set is empty while it's not in a route
+    CustSet insertable = VrpUtils.validateInsertableCusts(
+        insertableAfter[beforeNode], custId, afterCustId, minDepartTimes[newNode], 
+        maxArriveTimes[afterNode], problem, false, insertableAfter[newNode]);
     
-    //need to add custId to insertion point lists of all nodes remaining in newNode.insertableAfter
-    for (int insertableCustId : newNode.insertableAfter) {
-      double cost = VrpUtils.costOfInsertion(custId, afterNode.custId, insertableCustId, problem);
-      custInsertionPoints[insertableCustId].add(newNode, cost);
+    //need to add custId to insertion point lists of all nodes remaining in the new node's insertableAfter
+    for (int insertableCustId = insertable.first(); insertableCustId >= 0; 
+        insertableCustId = insertable.next(insertableCustId)) {
+      trail.insertableAdded(newNode, insertableCustId);
+      double cost = VrpUtils.costOfInsertion(custId, afterCustId, insertableCustId, problem);
+      trail.addPoint(insertableCustId, newNode, cost);
     }
     
     //find all cities that can still be inserted before city
     //update insertion lists for those cities
       //the cost of insertion at this point will change for the customer
       //that means we need to move the insertion point around in the customer's insertion list
-      //for now when we revert we will just calculate again, but in the future we can save old position
     
-    Set<Integer> removedFromBeforeNode = VrpUtils.validateInsertableCusts(
-        beforeNode.insertableAfter.iterator(), beforeNode.custId, custId, beforeNode.minDepartTime, 
-        newNode.maxArriveTime, problem, true);
+    VrpUtils.validateInsertableCusts(insertableAfter[beforeNode], beforeCustId, custId, minDepartTimes[beforeNode], 
+        maxArriveTimes[newNode], problem, true, removed);
         
-    //for all customers still in beforeNode.insertableAfter, need to update cost of insertion (by taking into account)
-    //new successor for the beforeNode entry in their insertion point lists
-    for (int insertableCustId : beforeNode.insertableAfter) {
-      double newCost = VrpUtils.costOfInsertion(beforeNode.custId, custId, insertableCustId, problem);
-      custInsertionPoints[insertableCustId].update(beforeNode, newCost);
+    //for all customers still in beforeNode's insertableAfter, need to update cost of insertion (by taking into
+    //account) new successor for the beforeNode entry in their insertion point lists
+    insertable = insertableAfter[beforeNode];
+    for (int insertableCustId = insertable.first(); insertableCustId >= 0; 
+        insertableCustId = insertable.next(insertableCustId)) {
+      double newCost = VrpUtils.costOfInsertion(beforeCustId, custId, insertableCustId, problem);
+      trail.updatePoint(insertableCustId, beforeNode, newCost);
     }
-    //for all customers in removedFromBeforeNode, need to remove beforeNode from their insertion point lists
-    for (int insertableCustId : removedFromBeforeNode) {
-      if (!custInsertionPoints[insertableCustId].remove(beforeNode)) {
-        consistent = false;
-//        LOG.info("inconsistent, " + insertableCustId + " has no insertion points");
-      }
+    //for all customers removed from beforeNode, need to remove beforeNode from their insertion point lists
+    if (!removeInsertionPoints(beforeNode)) {
+      return new InsertionEffects(newNode, trailMark, false);
     }
     
     //propagate minVisitTime and maxDepartTime
-    List<RouteNode> minDepartTimeChangedNodes = VrpUtils.propagateMinDepartTime(newNode, problem);
-    List<RouteNode> maxArriveTimeChangedNodes = VrpUtils.propagateMaxVisitTime(newNode, problem);
+    int numMinDepartTimeChanged = VrpUtils.propagateMinDepartTime(routes, newNode, problem, trail,
+        minDepartTimeChangedNodes);
+    int numMaxArriveTimeChanged = VrpUtils.propagateMaxVisitTime(routes, newNode, problem, trail,
+        maxArriveTimeChangedNodes);
     //remove insertion points due to new bounds
-    List<RemovedCustomers> removedCustsLists = new ArrayList<RemovedCustomers>();
-    for (RouteNode routeNode : minDepartTimeChangedNodes) {
-      Set<Integer> removed = VrpUtils.validateInsertableCusts(routeNode.insertableAfter.iterator(),
-          routeNode.custId, routeNode.next.custId, routeNode.minDepartTime, routeNode.next.maxArriveTime,
-          problem, true);
-      removedCustsLists.add(new RemovedCustomers(routeNode, removed));
-    }
-    for (RouteNode routeNode : maxArriveTimeChangedNodes) {
-      Set<Integer> removed = VrpUtils.validateInsertableCusts(routeNode.prev.insertableAfter.iterator(),
-          routeNode.prev.custId, routeNode.custId, routeNode.prev.minDepartTime, routeNode.maxArriveTime,
-          problem, true);
-      removedCustsLists.add(new RemovedCustomers(routeNode.prev, removed));
+    for (int i = 0; i < numMinDepartTimeChanged; i++) {
+      int node = minDepartTimeChangedNodes[i];
+      int nextNode = next[node];
+      VrpUtils.validateInsertableCusts(insertableAfter[node], node, routes.custId(nextNode), 
+          minDepartTimes[node], maxArriveTimes[nextNode], problem, true, removed);
+      if (!removeInsertionPoints(node)) {
+        return new InsertionEffects(newNode, trailMark, false);
+      }
     }
-    for (RemovedCustomers removedAtPoint : removedCustsLists) {
-      for (int insertableCustId : removedAtPoint.custIds) {
-        custInsertionPoints[insertableCustId].remove(removedAtPoint.insertAfter);
+    for (int i = 0; i < numMaxArriveTimeChanged; i++) {
+      int node = maxArriveTimeChangedNodes[i];
+      int prevNode = prev[node];
+      VrpUtils.validateInsertableCusts(insertableAfter[prevNode], routes.custId(prevNode), node, 
+          minDepartTimes[prevNode], maxArriveTimes[node], problem, true, removed);
+      if (!removeInsertionPoints(prevNode)) {
+        return new InsertionEffects(newNode, trailMark, false);
       }
     }
     
-    removedCustsLists.add(new RemovedCustomers(beforeNode, removedFromBeforeNode));
-    return new InsertionEffects(newNode, removedCustsLists, consistent);
+    //remove insertion points on the route for customers that no longer fit in it
+    if (remainingCapacity < maxDemand && !removeOverCapacity(routes, route, remainingCapacity)) {
+      return new InsertionEffects(newNode, trailMark, false);
+    }
+    
+    return new InsertionEffects(newNode, trailMark, true);
+  }
+  
+  /**
+   * Removes the insertion points on the given route of customers whose demand is more than its
+   * remaining capacity.
+   * 
+   * @return
+   *     false if any of the customers were left with no insertion points
+   */
+  private boolean removeOverCapacity(RouteStore routes, int route, int remainingCapacity) {
+    int[] demands = problem.getDemands();
+    int node = routes.getRouteStart(route);
+    do {
+      CustSet insertable = routes.insertableAfter[node];
+      for (int custId = insertable.first(); custId >= 0; custId = insertable.next(custId)) {
+        if (demands[custId] > remainingCapacity) {
+          insertable.remove(custId);
+          removed.add(custId);
+        }
+      }
+      if (!removeInsertionPoints(node)) {
+        return false;
+      }
+      node = routes.next[node];
+    } while (!routes.isDepot(node));
+    return true;
+  }
+  
+  /**
+   * Removes the given node from the insertion points of the customers in the removed set, which
+   * were just pruned from its insertable set, and empties the removed set.
+   * 
+   * @return
+   *     false if any of the customers were left with no insertion points
+   */
+  private boolean removeInsertionPoints(int node) {
+    //keep going so that removed is left empty
+    boolean consistent = true;
+    for (int custId = removed.first(); custId >= 0; custId = removed.next(custId)) {
+      trail.insertableRemoved(node, custId);
+      if (!trail.removePoint(custId, node)) {
+        consistent = false;
+      }
+      removed.remove(custId);
+    }
+    return consistent;
   }
 }
@@ -17,11 +17,13 @@
 package pls.vrp.hm;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -31,83 +33,414 @@ import pls.vrp.VrpSolution;
 public class VrpSearcher {
   private static final Logger LOG = Logger.getLogger(VrpSearcher.class);
   
+  /** System property that turns on recalculating the cost of every solution found from scratch. */
+  public static final String CHECK_COSTS_PROPERTY = "vrp.checkCosts";
+  
+  private static final boolean CHECK_COSTS = Boolean.getBoolean(CHECK_COSTS_PROPERTY);
+  
+  //the clock is read once per this many nodes
+  private static final int CLOCK_CHECK_INTERVAL = 16;
+  
   private VrpInserter inserter;
   private VrpReverter reverter;
   private VrpProblem problem;
   
+  //search state, allocated once and reset for every partial solution
+  private RouteStore routes;
+  private CustInsertionPoints[] custsInsertionPoints;
+  private List<CustInsertionPoints> insertionPointsPool = new ArrayList<CustInsertionPoints>();
+  private BoundRemaining boundRemaining;
+  private CustSet unroutedSet;
+  private Trail trail;
+  
+  //if positive, customers are only seeded with insertion points next to their nearest neighbors
+  private int numNeighbors;
+  //for each node, the last customer it was considered as an insertion point for
+  private int[] lastSeededFor = new int[0];
+  
+  //limits of the current solve, and how far it has got
+  private SearchLimits limits;
+  private long numNodes;
+  private boolean stopped;
+  
+  //for searching the subtrees under the root in parallel
+  private ExecutorService executor;
+  private int minParallelCusts;
+  private final ConcurrentLinkedQueue<VrpSearcher> helpers = new ConcurrentLinkedQueue<VrpSearcher>();
+  //set while this is searching a subtree for another searcher
+  private SharedBound sharedBound;
+  private CustOrdering ordering;
+  
   public VrpSearcher(VrpProblem problem) {
     this.problem = problem;
-    inserter = new VrpInserter(problem);
-    reverter = new VrpReverter(problem);
+    int numCities = problem.getNumCities();
+    routes = new RouteStore(numCities);
+    custsInsertionPoints = new CustInsertionPoints[numCities];
+    boundRemaining = new BoundRemaining(numCities);
+    ordering = new CustOrdering(CustOrdering.Type.MAX_MIN_COST, 2, custsInsertionPoints);
+    unroutedSet = new CustSet(numCities);
+    trail = new Trail(routes, custsInsertionPoints);
+    inserter = new VrpInserter(problem, trail);
+    reverter = new VrpReverter(trail);
+  }
+  
+  /**
+   * Makes initialize only consider inserting a customer next to one of its numNeighbors nearest
+   * customers, or into an empty route. Customers that end up with no insertion points that way
+   * fall back to every point. 0 turns this off.
+   */
+  public void setNumNeighbors(int numNeighbors) {
+    this.numNeighbors = numNeighbors;
+  }
+  
+  /**
+   * Chooses the order customers are inserted in. The default is MAX_MIN_COST.
+   * 
+   * @param regretK
+   *     how many of each customer's cheapest insertion points REGRET and COMBINED compare
+   */
+  public void setOrdering(CustOrdering.Type type, int regretK) {
+    ordering = new CustOrdering(type, regretK, custsInsertionPoints);
+  }
+  
+  /**
+   * Makes solves with at least minCustomers customers to insert search the subtrees under each
+   * insertion point of the first customer as separate tasks on the given executor. Each task runs
+   * on a searcher of its own, and they prune against the best solution any of them has found.
+   * The executor shouldn't be one whose threads call solve, or they could all end up waiting on
+   * tasks that have no thread to run on. Pass null to search sequentially.
+   */
+  public void setParallel(ExecutorService executor, int minCustomers) {
+    this.executor = executor;
+    this.minParallelCusts = minCustomers;
   }
   
   //TODO: worry about insertions making cost go above bestCost
+  /**
+   * Resets the searcher's state to the given partial solution. The returned search node shares
+   * that state, so it's only valid until the next call.
+   */
   public VrpCpSearchNode initialize(VrpSolution partialSol) {
-    int[] demands = partialSol.getProblem().getDemands();
-    List<List<Integer>> routes = partialSol.getRoutes();
-    List<Integer> unrouted = partialSol.getUninsertedNodes();
-    
-    //build routes
-    List<RouteNode> routeStarts = new ArrayList<RouteNode>(routes.size());
-    List<RouteNode> routeEnds = new ArrayList<RouteNode>(routes.size());
-    for (List<Integer> routeCusts : routes) {
-      Route route = new Route(problem.getVehicleCapacity());
-      RouteNode prevNode = new RouteNode(-1, null, null, route);
-      routeStarts.add(prevNode);
-      for (int custId : routeCusts) {
-        RouteNode node = new RouteNode(custId, null, prevNode, route);
-        route.remainingCapacity -= demands[custId];
-        prevNode.next = node;
-        prevNode = node;
-      }
-      RouteNode endNode = new RouteNode(-1, null, prevNode, route);
-      prevNode.next = endNode;
-      routeEnds.add(endNode);
+    int[] unrouted = partialSol.getUnrouted();
+    
+    //build routes, clearing anything left over from the last partial solution
+    trail.clear();
+    double[] routeCosts = new double[partialSol.getNumRoutes()];
+    for (int r = 0; r < routeCosts.length; r++) {
+      routeCosts[r] = partialSol.getRouteCost(r);
     }
+    routes.reset(partialSol.getTour(), partialSol.getRouteStarts(), routeCosts, problem.getDemands(), 
+        problem.getVehicleCapacity());
+    int numRoutes = routes.getNumRoutes();
     
     //calculate minDepartTimes and maxVisitTimes
-    for (RouteNode routeStart : routeStarts) {
-      routeStart.minDepartTime = 0;
-      VrpUtils.propagateMinDepartTime(routeStart, problem);
+    for (int r = 0; r < numRoutes; r++) {
+      int routeStart = routes.getRouteStart(r);
+      routes.minDepartTime[routeStart] = 0;
+      VrpUtils.propagateMinDepartTime(routes, routeStart, problem, null, null);
     }
-    for (RouteNode routeEnd : routeEnds) {
-      routeEnd.maxArriveTime = Integer.MAX_VALUE;
-      VrpUtils.propagateMaxVisitTime(routeEnd, problem);
+    for (int r = 0; r < numRoutes; r++) {
+      int routeEnd = routes.getRouteEnd(r);
+      routes.maxArriveTime[routeEnd] = Integer.MAX_VALUE;
+      VrpUtils.propagateMaxVisitTime(routes, routeEnd, problem, null, null);
     }
 
     //determine what's insertable where
-    CustInsertionPoints[] custsInsertionPoints = new CustInsertionPoints[problem.getNumCities()];
-    BoundRemaining boundRemaining = new BoundRemaining(problem.getNumCities());
-    for (int unroutedCustId : unrouted) {
-      custsInsertionPoints[unroutedCustId] = new CustInsertionPoints(boundRemaining, unroutedCustId, problem.getNumCities());
+    Arrays.fill(custsInsertionPoints, null);
+    boundRemaining.reset();
+    unroutedSet.clear();
+    ordering.reset();
+    int numNodes = routes.getNumNodes();
+    for (int i = 0; i < unrouted.length; i++) {
+      int unroutedCustId = unrouted[i];
+      CustInsertionPoints insertionPoints;
+      if (i < insertionPointsPool.size()) {
+        insertionPoints = insertionPointsPool.get(i);
+        insertionPoints.reset(boundRemaining, ordering, unroutedCustId, numNodes);
+      } else {
+        insertionPoints = new CustInsertionPoints(boundRemaining, ordering, unroutedCustId, numNodes);
+        insertionPointsPool.add(insertionPoints);
+      }
+      custsInsertionPoints[unroutedCustId] = insertionPoints;
+      unroutedSet.add(unroutedCustId);
+      ordering.add(unroutedCustId);
     }
-    for (RouteNode routeStart : routeStarts) {
-      RouteNode node = routeStart;
-      do {
-        node.insertableAfter = VrpUtils.validateInsertableCusts(unrouted.iterator(), node.custId, node.next.custId, 
-            node.minDepartTime, node.next.maxArriveTime, problem, false);
-        for (int insertableCustId : node.insertableAfter) {
-          double cost = VrpUtils.costOfInsertion(node.custId, node.next.custId, insertableCustId, problem);
-          custsInsertionPoints[insertableCustId].add(node, cost);
-        }
-        node = node.next;
-      } while (node.custId != -1);
+    if (numNeighbors > 0) {
+      seedNearNeighbors(unrouted);
+    } else {
+      for (int r = 0; r < numRoutes; r++) {
+        int node = routes.getRouteStart(r);
+        do {
+          int nextNode = routes.next[node];
+          int custId = routes.custId(node);
+          int nextCustId = routes.custId(nextNode);
+          CustSet insertable = VrpUtils.validateInsertableCusts(unroutedSet, custId, nextCustId, 
+              routes.minDepartTime[node], routes.maxArriveTime[nextNode], problem, false, routes.insertableAfter[node]);
+          for (int insertableCustId = insertable.first(); insertableCustId >= 0; 
+              insertableCustId = insertable.next(insertableCustId)) {
+            if (problem.getDemands()[insertableCustId] > routes.remainingCapacity[r]) {
+              insertable.remove(insertableCustId);
+              continue;
+            }
+            double cost = VrpUtils.costOfInsertion(custId, nextCustId, insertableCustId, problem);
+            custsInsertionPoints[insertableCustId].add(node, cost);
+          }
+          node = nextNode;
+        } while (!routes.isDepot(node));
+      }
     }
     
     double curCost = partialSol.getToursCost();
-    return new VrpCpSearchNode(new HashSet<Integer>(unrouted), custsInsertionPoints, boundRemaining, curCost, routeStarts);
+    return new VrpCpSearchNode(unroutedSet, custsInsertionPoints, boundRemaining, curCost, routes);
+  }
+  
+  /**
+   * Seeds each unrouted customer with the points before and after its routed nearest neighbors,
+   * and the starts of empty routes.
+   */
+  private void seedNearNeighbors(int[] unrouted) {
+    int numNodes = routes.getNumNodes();
+    if (lastSeededFor.length < numNodes) {
+      lastSeededFor = new int[numNodes];
+    }
+    Arrays.fill(lastSeededFor, 0, numNodes, -1);
+    int numRoutes = routes.getNumRoutes();
+    for (int unroutedCustId : unrouted) {
+      int[] neighbors = problem.getNeighbors(unroutedCustId);
+      int numToScan = Math.min(numNeighbors, neighbors.length);
+      for (int i = 0; i < numToScan; i++) {
+        int neighbor = neighbors[i];
+        if (routes.routeOf[neighbor] >= 0) {
+          seed(unroutedCustId, routes.prev[neighbor]);
+          seed(unroutedCustId, neighbor);
+        }
+      }
+      for (int r = 0; r < numRoutes; r++) {
+        int routeStart = routes.getRouteStart(r);
+        if (routes.next[routeStart] == routes.getRouteEnd(r)) {
+          seed(unroutedCustId, routeStart);
+        }
+      }
+      if (custsInsertionPoints[unroutedCustId].isEmpty()) {
+        for (int r = 0; r < numRoutes; r++) {
+          int node = routes.getRouteStart(r);
+          do {
+            seed(unroutedCustId, node);
+            node = routes.next[node];
+          } while (!routes.isDepot(node));
+        }
+      }
+    }
+  }
+  
+  private void seed(int custId, int node) {
+    if (lastSeededFor[node] == custId) {
+      return;
+    }
+    lastSeededFor[node] = custId;
+    int nextNode = routes.next[node];
+    int nodeCustId = routes.custId(node);
+    int nextCustId = routes.custId(nextNode);
+    if (problem.getDemands()[custId] <= routes.remainingCapacity[routes.routeOf[node]]
+        && VrpUtils.isInsertable(custId, nodeCustId, nextCustId, routes.minDepartTime[node], 
+        routes.maxArriveTime[nextNode], problem)) {
+      routes.insertableAfter[node].add(custId);
+      custsInsertionPoints[custId].add(node, VrpUtils.costOfInsertion(nodeCustId, nextCustId, custId, problem));
+    }
   }
   
   public VrpSolution solve(VrpSolution partialSol, double bestCost, int discrepancies, VrpCpStats stats, boolean best) {
+    return solve(partialSol, bestCost, discrepancies, stats, best, null);
+  }
+  
+  /**
+   * @param limits
+   *     when to stop early, or null to search until done
+   * @return
+   *     the best solution found, which may be null if the limits were hit first
+   */
+  public VrpSolution solve(VrpSolution partialSol, double bestCost, int discrepancies, VrpCpStats stats, boolean best,
+      SearchLimits limits) {
     VrpCpSearchNode root = initialize(partialSol);
-    return search(root.unrouted, root.custsInsertionPoints, root.boundRemaining, bestCost, root.curCost, root.routeStarts,
-        discrepancies, stats, best);
+    numNodes = 0;
+    stopped = false;
+    if (hasUninsertable()) {
+      return null;
+    }
+    this.limits = limits;
+    VrpSolution sol;
+    if (executor != null && root.unrouted.size() >= minParallelCusts && discrepancies > 0) {
+      sol = searchParallel(partialSol, root.curCost, bestCost, discrepancies, stats, best);
+    } else {
+      sol = search(root.unrouted, root.custsInsertionPoints, root.boundRemaining, bestCost, root.curCost, 
+          root.routes, discrepancies, stats, best);
+    }
+    this.limits = null;
+    return sol;
+  }
+  
+  /**
+   * @return
+   *     whether any customer left to insert has nowhere to go
+   */
+  private boolean hasUninsertable() {
+    for (int custId = unroutedSet.first(); custId >= 0; custId = unroutedSet.next(custId)) {
+      if (custsInsertionPoints[custId].isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Chooses the first customer to insert as search would, and gives each of its insertion points
+   * that passes the capacity and cost checks to a task. Discrepancies are handed out the way the
+   * sequential loop would use them, except that points whose insertion turns out to be
+   * inconsistent still count against the points after them.
+   */
+  private VrpSolution searchParallel(final VrpSolution partialSol, double curCost, double bestCost, 
+      int discrepancies, VrpCpStats stats, final boolean best) {
+    if (stats != null) {
+      stats.reportNodeEvaluated();
+    }
+    final int custToInsert = ordering.peek();
+    CustInsertionPoints insertionPoints = custsInsertionPoints[custToInsert];
+    insertionPoints.sortByCost();
+    final SharedBound bound = new SharedBound(bestCost);
+    final SearchLimits taskLimits = limits;
+    
+    List<Future<VrpSolution>> futures = new ArrayList<Future<VrpSolution>>();
+    final List<VrpSearcher> taskSearchers = new ArrayList<VrpSearcher>();
+    List<VrpCpStats> taskStats = new ArrayList<VrpCpStats>();
+    for (int i = 0; i < insertionPoints.size() && discrepancies > 0; i++) {
+      final int insertAfter = insertionPoints.getNode(i);
+      if (problem.getDemands()[custToInsert] > routes.remainingCapacity[routes.routeOf[insertAfter]]) {
+        if (stats != null) {
+          stats.reportPrunedByCapacity();
+        }
+        continue;
+      }
+      double costOfInsertion = VrpUtils.costOfInsertion(routes.custId(insertAfter), 
+          routes.custId(routes.next[insertAfter]), custToInsert, problem);
+      if (curCost + costOfInsertion >= bestCost) {
+        if (stats != null) {
+          stats.reportPrunedByBound();
+        }
+        continue;
+      }
+      
+      VrpSearcher helper = helpers.poll();
+      if (helper == null) {
+        helper = new VrpSearcher(problem);
+        helper.setNumNeighbors(numNeighbors);
+        helper.setOrdering(ordering.getType(), ordering.getRegretK());
+      }
+      final VrpSearcher searcher = helper;
+      final VrpCpStats searcherStats = (stats != null) ? stats.forTask() : null;
+      final int taskDiscrepancies = discrepancies;
+      taskSearchers.add(searcher);
+      taskStats.add(searcherStats);
+      futures.add(executor.submit(new Callable<VrpSolution>() {
+        @Override
+        public VrpSolution call() {
+          return searcher.searchSubtree(partialSol, custToInsert, insertAfter, bound, taskDiscrepancies, 
+              searcherStats, best, taskLimits);
+        }
+      }));
+      discrepancies--;
+    }
+    
+    VrpSolution bestSol = null;
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        VrpSolution sol = futures.get(i).get();
+        if (sol != null && (bestSol == null || sol.getToursCost() < bestSol.getToursCost())) {
+          bestSol = sol;
+        }
+        if (stats != null) {
+          stats.add(taskStats.get(i));
+        }
+        stopped |= taskSearchers.get(i).stopped;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      for (Future<VrpSolution> future : futures) {
+        future.cancel(false);
+      }
+      stopped = true;
+      return bestSol;
+    } catch (ExecutionException ex) {
+      throw new RuntimeException("Parallel search task failed", ex.getCause());
+    }
+    //searchers whose tasks might still be running after an interruption are left to be collected
+    helpers.addAll(taskSearchers);
+    return bestSol;
+  }
+  
+  /**
+   * Runs on a helper searcher: sets up the partial solution, inserts custToInsert after
+   * insertAfter, and searches everything below that.
+   */
+  private VrpSolution searchSubtree(VrpSolution partialSol, int custToInsert, int insertAfter, SharedBound bound,
+      int discrepancies, VrpCpStats stats, boolean best, SearchLimits limits) {
+    VrpCpSearchNode root = initialize(partialSol);
+    this.limits = limits;
+    numNodes = 0;
+    stopped = false;
+    sharedBound = bound;
+    try {
+      unroutedSet.remove(custToInsert);
+      ordering.remove(custToInsert);
+      boundRemaining.notifyCustInserted(custToInsert);
+      CustInsertionPoints insertionPoints = custsInsertionPoints[custToInsert];
+      custsInsertionPoints[custToInsert] = null;
+      for (int i = 0; i < insertionPoints.size(); i++) {
+        routes.insertableAfter[insertionPoints.getNode(i)].remove(custToInsert);
+      }
+      
+      double costOfInsertion = VrpUtils.costOfInsertion(routes.custId(insertAfter), 
+          routes.custId(routes.next[insertAfter]), custToInsert, problem);
+      double bestCost = bound.get();
+      double curCost = root.curCost + costOfInsertion;
+      InsertionEffects changes = inserter.insert(routes, insertAfter, custToInsert, custsInsertionPoints);
+      if (!changes.consistent || curCost + boundRemaining.getBound() >= bestCost) {
+        return null;
+      }
+      return search(unroutedSet, custsInsertionPoints, boundRemaining, bestCost, curCost, routes, 
+          discrepancies, stats, best);
+    } finally {
+      //the next initialize resets everything else
+      sharedBound = null;
+      this.limits = null;
+    }
+  }
+  
+  /**
+   * Whether the last solve stopped early because of its limits.
+   */
+  public boolean wasStopped() {
+    return stopped;
+  }
+  
+  /**
+   * Counts a node and checks the limits, reading the clock only every CLOCK_CHECK_INTERVAL nodes.
+   */
+  private boolean shouldStop() {
+    if (limits == null) {
+      return false;
+    }
+    numNodes++;
+    if (numNodes > limits.getNodeBudget() || limits.isCancelled() 
+        || (numNodes % CLOCK_CHECK_INTERVAL == 0 && System.currentTimeMillis() >= limits.getDeadline())) {
+      stopped = true;
+    }
+    return stopped;
   }
   
   //TODO: we can include the sum of min insertion costs in our bound
   
-  private VrpSolution search(Set<Integer> remainingToInsert, CustInsertionPoints[] custsInsertionPoints, 
-      BoundRemaining boundRemaining, double bestCost, double curCost, List<RouteNode> routeStarts, int discrepancies,
+  private VrpSolution search(CustSet remainingToInsert, CustInsertionPoints[] custsInsertionPoints, 
+      BoundRemaining boundRemaining, double bestCost, double curCost, RouteStore routes, int discrepancies,
       VrpCpStats stats, boolean best) {
     
     int[] demands = problem.getDemands();
@@ -116,36 +449,52 @@ public class VrpSearcher {
     if (remainingToInsert.isEmpty()) {
       //we've found a solution
       //we could assert here that bound remaining is 0
-      List<List<Integer>> solRoutes = new ArrayList<List<Integer>>();
-      for (RouteNode routeStart : routeStarts) {
-        RouteNode routeNode = routeStart.next;
-        List<Integer> routeCustIds = new ArrayList<Integer>();
-        while (routeNode.custId != -1) {
-          routeCustIds.add(routeNode.custId);
-          routeNode = routeNode.next;
+      int numRoutes = routes.getNumRoutes();
+      int[] tour = new int[problem.getNumCities()];
+      int[] routeStarts = new int[numRoutes + 1];
+      double[] routeCosts = new double[numRoutes];
+      int numNonEmptyRoutes = 0;
+      int pos = 0;
+      for (int r = 0; r < numRoutes; r++) {
+        int routeNode = routes.next[routes.getRouteStart(r)];
+        if (routes.isDepot(routeNode)) { //ignore empty routes
+          continue;
         }
-        if (routeCustIds.size() > 0) { //ignore empty routes
-          solRoutes.add(routeCustIds);
+        routeCosts[numNonEmptyRoutes] = routes.routeCost[r];
+        routeStarts[numNonEmptyRoutes++] = pos;
+        while (!routes.isDepot(routeNode)) {
+          tour[pos++] = routeNode;
+          routeNode = routes.next[routeNode];
         }
       }
+      routeStarts[numNonEmptyRoutes] = pos;
       if (stats != null) {
         stats.reportNodeEvaluated();
       }
-      VrpSolution sol = new VrpSolution(solRoutes, problem);
-      if (Math.abs(sol.getToursCost() - curCost) > .001) {
-        LOG.error("costs inconsistent! " + sol.getToursCost() + " != " + curCost);
+      if (pos < tour.length) {
+        tour = Arrays.copyOf(tour, pos);
+      }
+      //route costs were kept up to date by the inserter, so there's no need to walk the routes
+      VrpSolution sol = new VrpSolution(tour, Arrays.copyOf(routeStarts, numNonEmptyRoutes + 1), null, problem, 
+          Arrays.copyOf(routeCosts, numNonEmptyRoutes));
+      if (CHECK_COSTS && (Math.abs(sol.calcToursCost() - curCost) > .001 
+          || Math.abs(sol.getToursCost() - curCost) > .001)) {
+        LOG.error("costs inconsistent! " + sol.calcToursCost() + " != " + curCost);
         return null;
       } else if (Math.abs(curCost - bestCost) > .001) {
         if (stats != null) {
           stats.reportNewBestSolution(curCost);
         }
+        if (sharedBound != null) {
+          sharedBound.offer(curCost);
+        }
         return sol;
       } else {
         return null;
       }
     }
     
-    if (discrepancies <= 0) {
+    if (discrepancies <= 0 || stopped || shouldStop()) {
       return null;
     }
     
@@ -153,10 +502,11 @@ public class VrpSearcher {
       stats.reportNodeEvaluated();
     }
     
-    //determine city whose minimum insert cost is the largest
+    //determine the city to insert next, by default the one whose minimum insert cost is the largest
     //its insertion points should be ordered
-    int custToInsert = chooseCustToInsert(remainingToInsert, custsInsertionPoints);
+    int custToInsert = ordering.peek();
     remainingToInsert.remove(custToInsert);
+    ordering.remove(custToInsert);
     boundRemaining.notifyCustInserted(custToInsert);
     
     CustInsertionPoints insertionPoints = custsInsertionPoints[custToInsert];
@@ -164,35 +514,48 @@ public class VrpSearcher {
     VrpSolution bestSol = null;
     
     //remove custToInsert from insertion point insertable-customer sets
-    Iterator<RouteNode> iter = insertionPoints.inCostOrderIterator();
-    while (iter.hasNext()) {
-      RouteNode next = iter.next();
-      if (!next.insertableAfter.remove(custToInsert)) {
+    //nothing touches its insertion points until it's reverted, so they can be sorted once here
+    insertionPoints.sortByCost();
+    int numInsertionPoints = insertionPoints.size();
+    for (int i = 0; i < numInsertionPoints; i++) {
+      if (!routes.insertableAfter[insertionPoints.getNode(i)].remove(custToInsert)) {
         LOG.error("lists not in sync");
       }
     }
     
-    iter = insertionPoints.inCostOrderIterator();
-    while (iter.hasNext() && discrepancies > 0) {
-      RouteNode insertAfter = iter.next();
+    for (int i = 0; i < numInsertionPoints && discrepancies > 0 && !stopped; i++) {
+      if (sharedBound != null) {
+        bestCost = Math.min(bestCost, sharedBound.get());
+      }
+      int insertAfter = insertionPoints.getNode(i);
       //make sure capacity not violated
-      if (demands[custToInsert] > insertAfter.route.remainingCapacity) {
+      if (demands[custToInsert] > routes.remainingCapacity[routes.routeOf[insertAfter]]) {
+        if (stats != null) {
+          stats.reportPrunedByCapacity();
+        }
         continue;
       }
       //make sure bound not violated
-      double costOfInsertion = VrpUtils.costOfInsertion(insertAfter.custId, insertAfter.next.custId, custToInsert, problem);
+      double costOfInsertion = VrpUtils.costOfInsertion(routes.custId(insertAfter), 
+          routes.custId(routes.next[insertAfter]), custToInsert, problem);
       if (curCost + costOfInsertion >= bestCost) {
+        if (stats != null) {
+          stats.reportPrunedByBound();
+        }
         continue;
       }
       
-//      stats.reportAboutToInsert();
-      InsertionEffects changes = inserter.insert(insertAfter, custToInsert, custsInsertionPoints);
-//      stats.reportFinishedInsertion();
+      if (stats != null) {
+        stats.reportAboutToInsert();
+      }
+      InsertionEffects changes = inserter.insert(routes, insertAfter, custToInsert, custsInsertionPoints);
+      if (stats != null) {
+        stats.reportFinishedInsertion();
+      }
 
-      //TODO: if any custs have no insertion points after this, give up
       if (changes.consistent && curCost + costOfInsertion + boundRemaining.getBound() < bestCost) {
         VrpSolution sol = search(remainingToInsert, custsInsertionPoints, boundRemaining, bestCost, 
-            curCost + costOfInsertion, routeStarts, discrepancies, stats, best);
+            curCost + costOfInsertion, routes, discrepancies, stats, best);
         if (sol != null && (bestSol == null || sol.getToursCost() < bestSol.getToursCost())) {
           bestSol = sol;
           bestCost = sol.getToursCost(); // to bound other children
@@ -201,39 +564,31 @@ public class VrpSearcher {
           return sol;
         }
         discrepancies--; //only count as discrepancy if we explore below
+      } else if (stats != null && changes.consistent) {
+        stats.reportPrunedByBound();
+      }
+      if (stats != null) {
+        stats.reportAboutToRevert();
+      }
+      reverter.revert(changes);
+      if (stats != null) {
+        stats.reportFinishedReversion();
       }
-      reverter.revert(changes, custsInsertionPoints);
     }
     
     boundRemaining.notifyCustReverted(custToInsert);
     remainingToInsert.add(custToInsert);
+    ordering.add(custToInsert);
     custsInsertionPoints[custToInsert] = insertionPoints;
     
     //add custToInsert back to insertion point insertable-customer sets
-    iter = insertionPoints.inCostOrderIterator();
-    while (iter.hasNext()) {
-      RouteNode next = iter.next();
-      next.insertableAfter.add(custToInsert);
+    for (int i = 0; i < numInsertionPoints; i++) {
+      routes.insertableAfter[insertionPoints.getNode(i)].add(custToInsert);
     }
     
     return bestSol;
   }
   
-  private int chooseCustToInsert(Collection<Integer> remainingToInsert, CustInsertionPoints[] custsInsertionPoints) {
-    Iterator<Integer> iter = remainingToInsert.iterator();
-    double maxMinCost = Integer.MIN_VALUE;
-    int bestCustId = -1;
-    while (iter.hasNext()) {
-      int custToInsertId = iter.next();
-      double cost = custsInsertionPoints[custToInsertId].getMinCost();
-      if (cost > maxMinCost) {
-        maxMinCost = cost;
-        bestCustId = custToInsertId;
-      }
-    }
-    return bestCustId;
-  }
-  
   /**
    * Checks to see whether an insertion will violate constraints.
    */
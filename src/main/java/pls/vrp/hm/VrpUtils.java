@@ -16,12 +16,6 @@
 
 package pls.vrp.hm;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
-
 import pls.vrp.VrpProblem;
 
 public class VrpUtils {
@@ -29,59 +23,89 @@ public class VrpUtils {
   /**
    * @param newNode
    *     should have minDepartTime set correctly
+   * @param trail
+   *     to record the changed times on, may be null
+   * @param affected
+   *     filled with the affected nodes, may be null
    * @return
-   *     a list of affected nodes
+   *     the number of affected nodes
    */
-  public static List<RouteNode> propagateMinDepartTime(RouteNode newNode, VrpProblem problem) {
+  public static int propagateMinDepartTime(RouteStore routes, int newNode, VrpProblem problem, Trail trail,
+      int[] affected) {
     int[] serviceTimes = problem.getServiceTimes();
     int[] windowStartTimes = problem.getWindowStartTimes();
+    int[] next = routes.next;
+    int[] prev = routes.prev;
+    double[] minDepartTimes = routes.minDepartTime;
     
-    List<RouteNode> affectedList = new ArrayList<RouteNode>();
-    
-    RouteNode curNode = newNode.next;
-    while (curNode.custId != -1) { //while we haven't reached depot
-      double newCurNodeMinDepartTime = Math.max(curNode.prev.minDepartTime + 
-          problem.getDistance(curNode.prev.custId, curNode.custId), windowStartTimes[curNode.custId]) +
-          serviceTimes[curNode.custId];
-      if (Math.abs(newCurNodeMinDepartTime - curNode.minDepartTime) < .001) {
+    int numAffected = 0;
+    int curNode = next[newNode];
+    while (!routes.isDepot(curNode)) { //while we haven't reached depot
+      int prevNode = prev[curNode];
+      double newCurNodeMinDepartTime = Math.max(minDepartTimes[prevNode] + 
+          problem.getDistance(routes.custId(prevNode), curNode), windowStartTimes[curNode]) +
+          serviceTimes[curNode];
+      if (Math.abs(newCurNodeMinDepartTime - minDepartTimes[curNode]) < .001) {
         //if nothing's changed here, nothing's gonna change in the future
         break;
       }
-      curNode.minDepartTime = newCurNodeMinDepartTime;
-      affectedList.add(curNode);
-      curNode = curNode.next;
+      if (trail != null) {
+        trail.setMinDepartTime(curNode, newCurNodeMinDepartTime);
+      } else {
+        minDepartTimes[curNode] = newCurNodeMinDepartTime;
+      }
+      if (affected != null) {
+        affected[numAffected] = curNode;
+      }
+      numAffected++;
+      curNode = next[curNode];
     }
     
-    return affectedList;
+    return numAffected;
   }
   
   /**
    * 
    * @param newNode
    *     Should have its maxVisitTime set correctly
-   * @param problem
+   * @param trail
+   *     to record the changed times on, may be null
+   * @param affected
+   *     filled with the affected nodes, may be null
    * @return
+   *     the number of affected nodes
    */
-  public static List<RouteNode> propagateMaxVisitTime(RouteNode newNode, VrpProblem problem) {
+  public static int propagateMaxVisitTime(RouteStore routes, int newNode, VrpProblem problem, Trail trail,
+      int[] affected) {
     int[] serviceTimes = problem.getServiceTimes();
     int[] windowEndTimes = problem.getWindowEndTimes();
+    int[] next = routes.next;
+    int[] prev = routes.prev;
+    double[] maxArriveTimes = routes.maxArriveTime;
     
-    List<RouteNode> affectedList = new ArrayList<RouteNode>();
-    
-    RouteNode curNode = newNode.prev;
-    while (curNode.custId != -1) {
+    int numAffected = 0;
+    int curNode = prev[newNode];
+    while (!routes.isDepot(curNode)) {
+      int nextNode = next[curNode];
       //not sure this is right
-      double newCurNodeMaxDepartTime = curNode.next.maxArriveTime - problem.getDistance(curNode.next.custId, curNode.custId);
-      double newCurNodeMaxArriveTime = Math.min(windowEndTimes[curNode.custId], 
-          newCurNodeMaxDepartTime - serviceTimes[curNode.custId]);
-      if (Math.abs(newCurNodeMaxArriveTime - curNode.maxArriveTime) < .001) {
+      double newCurNodeMaxDepartTime = maxArriveTimes[nextNode] - problem.getDistance(routes.custId(nextNode), curNode);
+      double newCurNodeMaxArriveTime = Math.min(windowEndTimes[curNode], 
+          newCurNodeMaxDepartTime - serviceTimes[curNode]);
+      if (Math.abs(newCurNodeMaxArriveTime - maxArriveTimes[curNode]) < .001) {
         break;
       }
-      curNode.maxArriveTime = newCurNodeMaxArriveTime;
-      affectedList.add(curNode);
-      curNode = curNode.prev;
+      if (trail != null) {
+        trail.setMaxArriveTime(curNode, newCurNodeMaxArriveTime);
+      } else {
+        maxArriveTimes[curNode] = newCurNodeMaxArriveTime;
+      }
+      if (affected != null) {
+        affected[numAffected] = curNode;
+      }
+      numAffected++;
+      curNode = prev[curNode];
     }
-    return affectedList;
+    return numAffected;
   }
   
   public static double costOfInsertion(int custIdBefore, int custIdAfter, int custIdToInsert, VrpProblem problem) {
@@ -93,7 +117,7 @@ public class VrpUtils {
   /**
    * Validates the customers that are insertable at a given point.
    * 
-   * @param custsIter
+   * @param custs
    * @param custBefore
    *     The predecessor to a would be inserted node. -1 if it's the depot.
    * @param custAfter
@@ -103,42 +127,42 @@ public class VrpUtils {
    * @param minVisitTime
    *     The new maximum visit time for successor.
    * @param remove
-   *     If true, then pruned custs will be removed from the original list, and the removed list will be returned.
-   *     Otherwise, the returned list will be those that remain.
+   *     If true, then pruned custs will be removed from the original set and added to result.
+   *     Otherwise, those that remain will be added to result.
+   * @param result
+   *     Set to add the pruned or remaining customers to.
    * @return
+   *     result
    */
-  public static Set<Integer> validateInsertableCusts(Iterator<Integer> custsIter, int custBefore, int custAfter, double minDepartTime, 
-      double maxVisitTime, VrpProblem problem, boolean remove) {
-    
-    int[] serviceTimes = problem.getServiceTimes();
-    int[] windowStartTimes = problem.getWindowStartTimes();
-    int[] windowEndTimes = problem.getWindowEndTimes();
-    double[][] distances = problem.getDistances();
-    double[] distsFromBefore = (custBefore == -1) ? problem.getDistancesFromDepot() : distances[custBefore];
-    double[] distsFromAfter = (custAfter == -1) ? problem.getDistancesFromDepot() : distances[custAfter];
-    Set<Integer> list = new HashSet<Integer>();
+  public static CustSet validateInsertableCusts(CustSet custs, int custBefore, int custAfter, double minDepartTime, 
+      double maxVisitTime, VrpProblem problem, boolean remove, CustSet result) {
     
-    while (custsIter.hasNext()) {
-      int custId = custsIter.next();
-      boolean insertable = true;
-      double custMinArriveTime = minDepartTime + distsFromBefore[custId];
-      if (custMinArriveTime > windowEndTimes[custId]) {
-        insertable = false;
-      } else {
-        double custMinDepartTime = Math.max(windowStartTimes[custId], custMinArriveTime) + serviceTimes[custId];
-        if (custMinDepartTime + distsFromAfter[custId] > maxVisitTime) {
-          insertable = false;
-        }
-      }
+    for (int custId = custs.first(); custId >= 0; custId = custs.next(custId)) {
+      boolean insertable = isInsertable(custId, custBefore, custAfter, minDepartTime, maxVisitTime, problem);
       if (!insertable && remove) {
-        custsIter.remove();
-        list.add(custId);
+        custs.remove(custId);
+        result.add(custId);
       } else if (insertable && !remove) {
-        list.add(custId);
+        result.add(custId);
       }
     }
     
-    return list;
+    return result;
+  }
+  
+  /**
+   * Whether the customer can be inserted between custBefore and custAfter without violating time
+   * windows, given the predecessor's minimum depart time and the successor's maximum visit time.
+   */
+  public static boolean isInsertable(int custId, int custBefore, int custAfter, double minDepartTime, 
+      double maxVisitTime, VrpProblem problem) {
+    double custMinArriveTime = minDepartTime + problem.getDistance(custBefore, custId);
+    if (custMinArriveTime > problem.getWindowEndTimes()[custId]) {
+      return false;
+    }
+    double custMinDepartTime = Math.max(problem.getWindowStartTimes()[custId], custMinArriveTime) 
+        + problem.getServiceTimes()[custId];
+    return custMinDepartTime + problem.getDistance(custAfter, custId) <= maxVisitTime;
   }
   
   public static double calcMinDepartTime(double prevMinDepartTime, double dist, int windowStartTime, int serviceTime) {
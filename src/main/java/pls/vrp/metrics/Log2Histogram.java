@@ -0,0 +1,133 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, with a bucket per power of
+ * two. Bucket b holds values from 2^(b-1) to 2^b - 1, so percentiles are reported as the upper
+ * end of their bucket and are within a factor of two. Recording is a few uncontended atomic adds,
+ * using the same striping as StripedCounter.
+ */
+public class Log2Histogram implements Log2HistogramMBean {
+  private static final int NUM_BUCKETS = 65;
+  private static final int COUNT = NUM_BUCKETS;
+  private static final int SUM = NUM_BUCKETS + 1;
+  private static final int MAX = NUM_BUCKETS + 2;
+  //buckets, count, sum and max, rounded up to whole cache lines
+  private static final int STRIDE = 
+      (MAX + StripedCounter.PADDING) / StripedCounter.PADDING * StripedCounter.PADDING;
+  
+  private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.NUM_STRIPES * STRIDE);
+  
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    int base = StripedCounter.stripe() * STRIDE;
+    cells.getAndIncrement(base + 64 - Long.numberOfLeadingZeros(value));
+    cells.getAndIncrement(base + COUNT);
+    cells.getAndAdd(base + SUM, value);
+    long max;
+    while (value > (max = cells.get(base + MAX))) {
+      if (cells.compareAndSet(base + MAX, max, value)) {
+        break;
+      }
+    }
+  }
+  
+  private long sumOf(int offset) {
+    long sum = 0;
+    for (int i = 0; i < StripedCounter.NUM_STRIPES; i++) {
+      sum += cells.get(i * STRIDE + offset);
+    }
+    return sum;
+  }
+  
+  @Override
+  public long getCount() {
+    return sumOf(COUNT);
+  }
+  
+  public long getSum() {
+    return sumOf(SUM);
+  }
+  
+  @Override
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double)getSum() / count;
+  }
+  
+  @Override
+  public long getMax() {
+    long max = 0;
+    for (int i = 0; i < StripedCounter.NUM_STRIPES; i++) {
+      max = Math.max(max, cells.get(i * STRIDE + MAX));
+    }
+    return max;
+  }
+  
+  /**
+   * @param fraction
+   *     between 0 and 1
+   */
+  public long getPercentile(double fraction) {
+    long[] buckets = new long[NUM_BUCKETS];
+    long count = 0;
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      buckets[b] = sumOf(b);
+      count += buckets[b];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long)Math.ceil(fraction * count);
+    long seen = 0;
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      seen += buckets[b];
+      if (seen >= rank && buckets[b] > 0) {
+        long upper = (b == 64) ? Long.MAX_VALUE : (1L << b) - 1;
+        return Math.min(upper, getMax());
+      }
+    }
+    return getMax();
+  }
+  
+  @Override
+  public long getP50() {
+    return getPercentile(.5);
+  }
+  
+  @Override
+  public long getP90() {
+    return getPercentile(.9);
+  }
+  
+  @Override
+  public long getP99() {
+    return getPercentile(.99);
+  }
+  
+  public void reset() {
+    for (int i = 0; i < cells.length(); i++) {
+      cells.set(i, 0);
+    }
+  }
+}
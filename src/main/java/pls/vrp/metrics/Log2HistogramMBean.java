@@ -14,12 +14,19 @@
  * limitations under the License.
  */
 
-package pls.vrp.hm;
 
-public class Route {
-  public int remainingCapacity;
+package pls.vrp.metrics;
+
+public interface Log2HistogramMBean {
+  public long getCount();
+  
+  public double getMean();
+  
+  public long getMax();
+  
+  public long getP50();
+  
+  public long getP90();
   
-  public Route(int remainingCapacity) {
-    this.remainingCapacity = remainingCapacity;
-  }
+  public long getP99();
 }
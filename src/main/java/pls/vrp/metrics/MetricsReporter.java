@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Periodically appends a row of summary metrics to a CSV file and replaces a JSON file with a
+ * full snapshot. Either file may be null.
+ */
+public class MetricsReporter {
+  private static final Logger LOG = Logger.getLogger(MetricsReporter.class);
+  
+  private final SearchMetrics metrics;
+  private final File csvFile;
+  private final File jsonFile;
+  private ScheduledExecutorService executor;
+  
+  public MetricsReporter(SearchMetrics metrics, File csvFile, File jsonFile) {
+    this.metrics = metrics;
+    this.csvFile = csvFile;
+    this.jsonFile = jsonFile;
+  }
+  
+  public synchronized void start(long periodMs) {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        report();
+      }
+    }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Stops reporting, after writing the metrics one last time.
+   */
+  public synchronized void stop() throws InterruptedException {
+    if (executor != null) {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      executor = null;
+    }
+    report();
+  }
+  
+  public void report() {
+    try {
+      if (csvFile != null) {
+        boolean writeHeader = !csvFile.exists() || csvFile.length() == 0;
+        Writer writer = new OutputStreamWriter(new FileOutputStream(csvFile, true), "UTF-8");
+        try {
+          if (writeHeader) {
+            writer.write(SearchMetrics.getCsvHeader());
+            writer.write('\n');
+          }
+          writer.write(metrics.toCsvRow());
+          writer.write('\n');
+        } finally {
+          writer.close();
+        }
+      }
+      if (jsonFile != null) {
+        //replace the snapshot in one step so that readers never see half of it
+        File tmp = new File(jsonFile.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+          writer.write(metrics.toJson());
+          writer.write('\n');
+        } finally {
+          writer.close();
+        }
+        if (!tmp.renameTo(jsonFile)) {
+          jsonFile.delete();
+          if (!tmp.renameTo(jsonFile)) {
+            throw new IOException("Couldn't rename " + tmp + " to " + jsonFile);
+          }
+        }
+      }
+    } catch (IOException ex) {
+      LOG.error("Failed to write metrics", ex);
+    }
+  }
+}
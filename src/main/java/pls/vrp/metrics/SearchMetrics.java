@@ -0,0 +1,360 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import pls.vrp.hm.VrpCpStats;
+
+/**
+ * Metrics for LNS runs, shared by every thread searching. Latencies are in nanoseconds.
+ * 
+ * Runners report each relaxation and solve, and searchers report insertions, reversions and
+ * pruning through the VrpCpStats they're given. The counters are striped, so reporting stays
+ * cheap with many threads.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+  /** Relaxations of more customers than this are counted together. */
+  public static final int MAX_TRACKED_SIZE = 128;
+  /** Only the latest improvements are kept. */
+  public static final int MAX_TIMELINE = 10000;
+  
+  private static final String DOMAIN = "pls.vrp";
+  
+  private final Log2Histogram relaxNanos = new Log2Histogram();
+  private final Log2Histogram solveNanos = new Log2Histogram();
+  private final Log2Histogram insertNanos = new Log2Histogram();
+  private final Log2Histogram revertNanos = new Log2Histogram();
+  private final Log2Histogram nodesPerSolve = new Log2Histogram();
+  
+  private final StripedCounter solves = new StripedCounter();
+  private final StripedCounter improvements = new StripedCounter();
+  private final StripedCounter nodesEvaluated = new StripedCounter();
+  private final StripedCounter prunedByBound = new StripedCounter();
+  private final StripedCounter prunedByCapacity = new StripedCounter();
+  private final StripedCounter[] attemptsBySize = new StripedCounter[MAX_TRACKED_SIZE + 1];
+  private final StripedCounter[] successesBySize = new StripedCounter[MAX_TRACKED_SIZE + 1];
+  
+  //ring buffer of (time since start, cost) for each improvement
+  private final long[] timelineMillis = new long[MAX_TIMELINE];
+  private final double[] timelineCosts = new double[MAX_TIMELINE];
+  private int timelineSize;
+  private int timelineNext;
+  private double bestCost = Double.MAX_VALUE;
+  
+  private volatile long startTime = System.currentTimeMillis();
+  private final List<ObjectName> registered = new ArrayList<ObjectName>();
+  
+  public SearchMetrics() {
+    for (int i = 0; i <= MAX_TRACKED_SIZE; i++) {
+      attemptsBySize[i] = new StripedCounter();
+      successesBySize[i] = new StripedCounter();
+    }
+  }
+  
+  public void reportRelaxation(long nanos) {
+    relaxNanos.record(nanos);
+  }
+  
+  public void reportInsertion(long nanos) {
+    insertNanos.record(nanos);
+  }
+  
+  public void reportReversion(long nanos) {
+    revertNanos.record(nanos);
+  }
+  
+  /**
+   * @param numRelaxed
+   *     how many customers were relaxed
+   * @param stats
+   *     the stats the solve was given, for its nodes and pruning counts
+   * @param newCost
+   *     the cost of the new incumbent, if there is one
+   */
+  public void reportSolve(int numRelaxed, long nanos, VrpCpStats stats, boolean improved, double newCost) {
+    solveNanos.record(nanos);
+    solves.increment();
+    nodesPerSolve.record(stats.getNumNodesEvaluated());
+    nodesEvaluated.add(stats.getNumNodesEvaluated());
+    prunedByBound.add(stats.getNumPrunedByBound());
+    prunedByCapacity.add(stats.getNumPrunedByCapacity());
+    int size = Math.min(Math.max(numRelaxed, 0), MAX_TRACKED_SIZE);
+    attemptsBySize[size].increment();
+    if (improved) {
+      successesBySize[size].increment();
+      improvements.increment();
+      reportImprovement(newCost);
+    }
+  }
+  
+  private synchronized void reportImprovement(double cost) {
+    timelineMillis[timelineNext] = System.currentTimeMillis() - startTime;
+    timelineCosts[timelineNext] = cost;
+    timelineNext = (timelineNext + 1) % MAX_TIMELINE;
+    timelineSize = Math.min(timelineSize + 1, MAX_TIMELINE);
+    bestCost = Math.min(bestCost, cost);
+  }
+  
+  public Log2Histogram getRelaxNanos() {
+    return relaxNanos;
+  }
+  
+  public Log2Histogram getSolveNanos() {
+    return solveNanos;
+  }
+  
+  public Log2Histogram getInsertNanos() {
+    return insertNanos;
+  }
+  
+  public Log2Histogram getRevertNanos() {
+    return revertNanos;
+  }
+  
+  public Log2Histogram getNodesPerSolve() {
+    return nodesPerSolve;
+  }
+  
+  @Override
+  public long getUptimeMillis() {
+    return System.currentTimeMillis() - startTime;
+  }
+  
+  @Override
+  public long getNumRelaxations() {
+    return relaxNanos.getCount();
+  }
+  
+  @Override
+  public long getNumSolves() {
+    return solves.sum();
+  }
+  
+  @Override
+  public long getNumImprovements() {
+    return improvements.sum();
+  }
+  
+  @Override
+  public long getNumNodesEvaluated() {
+    return nodesEvaluated.sum();
+  }
+  
+  @Override
+  public long getNumPrunedByBound() {
+    return prunedByBound.sum();
+  }
+  
+  @Override
+  public long getNumPrunedByCapacity() {
+    return prunedByCapacity.sum();
+  }
+  
+  @Override
+  public synchronized double getBestCost() {
+    return timelineSize == 0 ? Double.NaN : bestCost;
+  }
+  
+  @Override
+  public long[] getAttemptsBySize() {
+    return sums(attemptsBySize);
+  }
+  
+  @Override
+  public long[] getSuccessesBySize() {
+    return sums(successesBySize);
+  }
+  
+  @Override
+  public double[] getSuccessRatesBySize() {
+    long[] attempts = getAttemptsBySize();
+    long[] successes = getSuccessesBySize();
+    double[] rates = new double[attempts.length];
+    for (int i = 0; i < rates.length; i++) {
+      rates[i] = attempts[i] == 0 ? 0 : (double)successes[i] / attempts[i];
+    }
+    return rates;
+  }
+  
+  private static long[] sums(StripedCounter[] counters) {
+    long[] sums = new long[counters.length];
+    for (int i = 0; i < sums.length; i++) {
+      sums[i] = counters[i].sum();
+    }
+    return sums;
+  }
+  
+  /**
+   * @return
+   *     pairs of milliseconds since the start and the new cost, oldest first
+   */
+  public synchronized double[][] getTimeline() {
+    double[][] timeline = new double[timelineSize][];
+    int first = (timelineNext - timelineSize + MAX_TIMELINE) % MAX_TIMELINE;
+    for (int i = 0; i < timelineSize; i++) {
+      int index = (first + i) % MAX_TIMELINE;
+      timeline[i] = new double[] {timelineMillis[index], timelineCosts[index]};
+    }
+    return timeline;
+  }
+  
+  @Override
+  public void reset() {
+    for (Log2Histogram histogram : histograms()) {
+      histogram.reset();
+    }
+    solves.reset();
+    improvements.reset();
+    nodesEvaluated.reset();
+    prunedByBound.reset();
+    prunedByCapacity.reset();
+    for (int i = 0; i <= MAX_TRACKED_SIZE; i++) {
+      attemptsBySize[i].reset();
+      successesBySize[i].reset();
+    }
+    synchronized (this) {
+      timelineSize = 0;
+      timelineNext = 0;
+      bestCost = Double.MAX_VALUE;
+      startTime = System.currentTimeMillis();
+    }
+  }
+  
+  private Log2Histogram[] histograms() {
+    return new Log2Histogram[] {relaxNanos, solveNanos, insertNanos, revertNanos, nodesPerSolve};
+  }
+  
+  private static String[] histogramNames() {
+    return new String[] {"relaxNanos", "solveNanos", "insertNanos", "revertNanos", "nodesPerSolve"};
+  }
+  
+  /**
+   * Registers this and each of its histograms with the platform MBean server, under
+   * pls.vrp:type=SearchMetrics,name=the given name.
+   */
+  public synchronized void registerMBeans(String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name=" + name);
+      server.registerMBean(this, objectName);
+      registered.add(objectName);
+      Log2Histogram[] histograms = histograms();
+      String[] names = histogramNames();
+      for (int i = 0; i < histograms.length; i++) {
+        objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name=" + name + ",histogram=" + names[i]);
+        server.registerMBean(histograms[i], objectName);
+        registered.add(objectName);
+      }
+    } catch (JMException ex) {
+      throw new IllegalStateException("Couldn't register search metrics as " + name, ex);
+    }
+  }
+  
+  public synchronized void unregisterMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName objectName : registered) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException ex) {
+        //already gone
+      }
+    }
+    registered.clear();
+  }
+  
+  public static String getCsvHeader() {
+    StringBuilder sb = new StringBuilder("uptimeMillis,relaxations,solves,improvements,nodesEvaluated,"
+        + "prunedByBound,prunedByCapacity,bestCost");
+    for (String name : histogramNames()) {
+      sb.append(',').append(name).append("Mean,").append(name).append("P50,").append(name).append("P99,")
+          .append(name).append("Max");
+    }
+    return sb.toString();
+  }
+  
+  public String toCsvRow() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getUptimeMillis()).append(',').append(getNumRelaxations()).append(',').append(getNumSolves())
+        .append(',').append(getNumImprovements()).append(',').append(getNumNodesEvaluated()).append(',')
+        .append(getNumPrunedByBound()).append(',').append(getNumPrunedByCapacity()).append(',')
+        .append(Double.isNaN(getBestCost()) ? "" : String.valueOf(getBestCost()));
+    for (Log2Histogram histogram : histograms()) {
+      sb.append(',').append(String.format(Locale.US, "%.1f", histogram.getMean())).append(',')
+          .append(histogram.getP50()).append(',').append(histogram.getP99()).append(',')
+          .append(histogram.getMax());
+    }
+    return sb.toString();
+  }
+  
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{");
+    sb.append("\"uptimeMillis\":").append(getUptimeMillis());
+    sb.append(",\"relaxations\":").append(getNumRelaxations());
+    sb.append(",\"solves\":").append(getNumSolves());
+    sb.append(",\"improvements\":").append(getNumImprovements());
+    sb.append(",\"nodesEvaluated\":").append(getNumNodesEvaluated());
+    sb.append(",\"prunedByBound\":").append(getNumPrunedByBound());
+    sb.append(",\"prunedByCapacity\":").append(getNumPrunedByCapacity());
+    double bestCost = getBestCost();
+    sb.append(",\"bestCost\":").append(Double.isNaN(bestCost) ? "null" : String.valueOf(bestCost));
+    Log2Histogram[] histograms = histograms();
+    String[] names = histogramNames();
+    for (int i = 0; i < histograms.length; i++) {
+      Log2Histogram histogram = histograms[i];
+      sb.append(",\"").append(names[i]).append("\":{\"count\":").append(histogram.getCount())
+          .append(",\"mean\":").append(String.format(Locale.US, "%.1f", histogram.getMean()))
+          .append(",\"p50\":").append(histogram.getP50()).append(",\"p90\":").append(histogram.getP90())
+          .append(",\"p99\":").append(histogram.getP99()).append(",\"max\":").append(histogram.getMax())
+          .append('}');
+    }
+    //only sizes that were tried
+    long[] attempts = getAttemptsBySize();
+    long[] successes = getSuccessesBySize();
+    sb.append(",\"bySize\":[");
+    boolean first = true;
+    for (int i = 0; i < attempts.length; i++) {
+      if (attempts[i] == 0) {
+        continue;
+      }
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      sb.append("{\"size\":").append(i).append(",\"attempts\":").append(attempts[i])
+          .append(",\"successes\":").append(successes[i]).append('}');
+    }
+    sb.append("],\"timeline\":[");
+    double[][] timeline = getTimeline();
+    for (int i = 0; i < timeline.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append('[').append((long)timeline[i][0]).append(',').append(timeline[i][1]).append(']');
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+}
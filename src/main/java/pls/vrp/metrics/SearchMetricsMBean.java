@@ -0,0 +1,47 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.metrics;
+
+public interface SearchMetricsMBean {
+  public long getUptimeMillis();
+  
+  public long getNumRelaxations();
+  
+  public long getNumSolves();
+  
+  public long getNumImprovements();
+  
+  public long getNumNodesEvaluated();
+  
+  public long getNumPrunedByBound();
+  
+  public long getNumPrunedByCapacity();
+  
+  public double getBestCost();
+  
+  /**
+   * Attempts with each number of customers relaxed, the last entry covering everything larger.
+   */
+  public long[] getAttemptsBySize();
+  
+  public long[] getSuccessesBySize();
+  
+  public double[] getSuccessRatesBySize();
+  
+  public void reset();
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2012 Sandy Ryza
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pls.vrp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells so that threads incrementing it rarely contend. Each thread
+ * picks its cell by id, and cells are a cache line apart.
+ */
+public class StripedCounter {
+  //longs per cache line
+  static final int PADDING = 8;
+  static final int NUM_STRIPES = numStripes();
+  
+  private final AtomicLongArray cells = new AtomicLongArray(NUM_STRIPES * PADDING);
+  
+  static int numStripes() {
+    int stripes = 1;
+    while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+  
+  /**
+   * @return
+   *     which stripe the calling thread should use
+   */
+  static int stripe() {
+    return (int)(Thread.currentThread().getId() & (NUM_STRIPES - 1));
+  }
+  
+  public void increment() {
+    cells.getAndIncrement(stripe() * PADDING);
+  }
+  
+  public void add(long delta) {
+    cells.getAndAdd(stripe() * PADDING, delta);
+  }
+  
+  /**
+   * Not an atomic snapshot if other threads are adding at the same time.
+   */
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+  
+  public void reset() {
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      cells.set(i * PADDING, 0);
+    }
+  }
+}